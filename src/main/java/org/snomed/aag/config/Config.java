@@ -7,6 +7,7 @@ import org.springframework.boot.autoconfigure.elasticsearch.ElasticsearchRestCli
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.data.elasticsearch.repository.config.EnableElasticsearchRepositories;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication(
 		exclude = {
@@ -19,6 +20,7 @@ import org.springframework.data.elasticsearch.repository.config.EnableElasticsea
 				"org.snomed.aag.data.repositories"
 		})
 @EnableConfigurationProperties
+@EnableScheduling
 @PropertySource(value = "classpath:application.properties", encoding = "UTF-8")
 public abstract class Config extends ElasticsearchConfig {
 
@@ -1,6 +1,7 @@
 package org.snomed.aag.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.jms.config.DefaultJmsListenerContainerFactory;
@@ -13,6 +14,12 @@ public class JMSConfig {
     @Autowired
     private ConnectionFactory connectionFactory;
 
+    @Value("${aag.commit-queue.enabled}")
+    private boolean commitQueueEnabled;
+
+    @Value("${aag.commit-queue.concurrency}")
+    private String commitQueueConcurrency;
+
     @Bean(name = "topicJmsListenerContainerFactory")
     public DefaultJmsListenerContainerFactory getTopicFactory() {
         DefaultJmsListenerContainerFactory factory = new  DefaultJmsListenerContainerFactory();
@@ -21,4 +28,15 @@ public class JMSConfig {
         factory.setPubSubDomain(true);
         return factory;
     }
+
+    @Bean(name = "commitQueueListenerContainerFactory")
+    public DefaultJmsListenerContainerFactory getCommitQueueFactory() {
+        DefaultJmsListenerContainerFactory factory = new DefaultJmsListenerContainerFactory();
+        factory.setConnectionFactory(connectionFactory);
+        // A commit that fails to process is rolled back onto the queue for redelivery
+        factory.setSessionTransacted(true);
+        factory.setConcurrency(commitQueueConcurrency);
+        factory.setAutoStartup(commitQueueEnabled);
+        return factory;
+    }
 }
@@ -0,0 +1,169 @@
+package org.snomed.aag.data.client;
+
+import org.ihtsdo.otf.rest.client.RestClientException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Circuit breaker and bulkhead around calls to Snowstorm.
+ * <p>
+ * The bulkhead limits the number of request threads that can wait on Snowstorm at the same time. Consecutive failures,
+ * including calls slower than the slow call threshold, open the circuit; while open, calls are rejected immediately
+ * rather than waiting for the HTTP timeout. Only server errors, timeouts and IO errors count as failures; a client error,
+ * such as a branch that does not exist, shows that Snowstorm is responding. After the open duration a single trial call is let through to decide
+ * whether to close the circuit again.
+ */
+@Component
+public class SnowstormCircuitBreaker {
+
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final int failureThreshold;
+	private final long slowCallMillis;
+	private final long openMillis;
+	private final long bulkheadWaitMillis;
+	private final Semaphore bulkhead;
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	private State state = State.CLOSED;
+	private int consecutiveFailures;
+	private long openedAt;
+	private boolean trialInProgress;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SnowstormCircuitBreaker.class);
+
+	public SnowstormCircuitBreaker(@Value("${snowstorm.circuit-breaker.failure-threshold}") int failureThreshold,
+								   @Value("${snowstorm.circuit-breaker.slow-call-millis}") long slowCallMillis,
+								   @Value("${snowstorm.circuit-breaker.open-seconds}") long openSeconds,
+								   @Value("${snowstorm.bulkhead.max-concurrent-calls}") int maxConcurrentCalls,
+								   @Value("${snowstorm.bulkhead.max-wait-millis}") long bulkheadWaitMillis) {
+		this.failureThreshold = failureThreshold;
+		this.slowCallMillis = slowCallMillis;
+		this.openMillis = TimeUnit.SECONDS.toMillis(openSeconds);
+		this.bulkheadWaitMillis = bulkheadWaitMillis;
+		this.bulkhead = new Semaphore(maxConcurrentCalls);
+	}
+
+	/**
+	 * Run the given call to Snowstorm, unless the circuit is open or the bulkhead is full.
+	 *
+	 * @param call Call to Snowstorm.
+	 * @return Result of the call.
+	 * @throws CallNotPermittedException When the circuit is open or the bulkhead is full.
+	 * @throws RestClientException       When the call itself fails.
+	 */
+	public <T> T call(SnowstormCall<T> call) throws RestClientException {
+		acquirePermission();
+
+		boolean acquired;
+		try {
+			acquired = bulkhead.tryAcquire(bulkheadWaitMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			acquired = false;
+		}
+		if (!acquired) {
+			releaseTrial();
+			rejectedCount.incrementAndGet();
+			throw new CallNotPermittedException("Too many concurrent calls to Snowstorm.");
+		}
+
+		final long start = System.nanoTime();
+		boolean success = false;
+		try {
+			T result = call.call();
+			success = true;
+			return result;
+		} catch (RestClientException | RuntimeException e) {
+			success = !isSnowstormFailure(e);
+			throw e;
+		} finally {
+			bulkhead.release();
+			onComplete(success, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+		}
+	}
+
+	public synchronized State getState() {
+		if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+			return State.HALF_OPEN;
+		}
+		return state;
+	}
+
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	private synchronized void acquirePermission() throws CallNotPermittedException {
+		if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openMillis) {
+			state = State.HALF_OPEN;
+		}
+		if (state == State.OPEN || (state == State.HALF_OPEN && trialInProgress)) {
+			rejectedCount.incrementAndGet();
+			throw new CallNotPermittedException("Circuit to Snowstorm is open.");
+		}
+		if (state == State.HALF_OPEN) {
+			trialInProgress = true;
+		}
+	}
+
+	private synchronized void releaseTrial() {
+		trialInProgress = false;
+	}
+
+	private synchronized void onComplete(boolean success, long durationMillis) {
+		trialInProgress = false;
+		if (success && durationMillis < slowCallMillis) {
+			if (state != State.CLOSED) {
+				LOGGER.info("Snowstorm is responding again; closing circuit.");
+			}
+			state = State.CLOSED;
+			consecutiveFailures = 0;
+			return;
+		}
+
+		consecutiveFailures++;
+		if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+			LOGGER.warn("Opening circuit to Snowstorm for {}ms after {} failed or slow calls.", openMillis, consecutiveFailures);
+			state = State.OPEN;
+			openedAt = System.currentTimeMillis();
+		}
+	}
+
+	private static boolean isSnowstormFailure(Throwable throwable) {
+		for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+			if (cause instanceof HttpStatusCodeException httpStatusCodeException) {
+				return httpStatusCodeException.getStatusCode().is5xxServerError();
+			}
+			if (cause instanceof ResourceAccessException || cause instanceof IOException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@FunctionalInterface
+	public interface SnowstormCall<T> {
+		T call() throws RestClientException;
+	}
+
+	/**
+	 * Thrown when a call to Snowstorm is rejected without being attempted.
+	 */
+	public static class CallNotPermittedException extends RestClientException {
+		public CallNotPermittedException(String message) {
+			super(message);
+		}
+	}
+}
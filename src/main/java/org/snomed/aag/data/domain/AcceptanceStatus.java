@@ -0,0 +1,97 @@
+package org.snomed.aag.data.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.Setting;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Materialized sign-off status of a branch, kept in step with CriteriaItemSignOff so that the sign-offs of a branch
+ * can be read with a single GET. Each sign-off is held as a key of criteriaItemId and projectIteration, see {@link #toKey(String, Integer)}.
+ * A stale status must be rebuilt from CriteriaItemSignOff before it is used.
+ */
+@Document(indexName = "#{@indexNameProvider.getIndexNameWithPrefix('acceptance-status')}")
+@Setting(settingPath = "elasticsearch-settings.json")
+public class AcceptanceStatus {
+
+	public interface Fields {
+		String BRANCH = "branch";
+		String SIGN_OFF_KEYS = "signOffKeys";
+		String STALE = "stale";
+	}
+
+	private static final String KEY_SEPARATOR = "|";
+
+	@Id
+	@Field(type = FieldType.Keyword)
+	private String branch;
+
+	@Field(type = FieldType.Keyword)
+	private Set<String> signOffKeys;
+
+	@Field(type = FieldType.Boolean)
+	private boolean stale;
+
+	public AcceptanceStatus() {
+	}
+
+	public AcceptanceStatus(String branch, Set<String> signOffKeys, boolean stale) {
+		this.branch = branch;
+		this.signOffKeys = signOffKeys;
+		this.stale = stale;
+	}
+
+	public static String toKey(String criteriaItemId, Integer projectIteration) {
+		return criteriaItemId + KEY_SEPARATOR + (projectIteration == null ? "" : projectIteration);
+	}
+
+	/**
+	 * Return identifiers of signed off CriteriaItems. Project level sign-offs only count for the given project iteration,
+	 * task level lookups include all sign-offs of the branch.
+	 *
+	 * @param projectIteration Project iteration to match, or null to match all sign-offs.
+	 * @return Identifiers of signed off CriteriaItems.
+	 */
+	public Set<String> getSignedOffItemIds(Integer projectIteration) {
+		Set<String> criteriaItemIds = new HashSet<>();
+		if (signOffKeys == null) {
+			return criteriaItemIds;
+		}
+
+		for (String key : signOffKeys) {
+			int separator = key.lastIndexOf(KEY_SEPARATOR);
+			if (projectIteration == null || key.substring(separator + 1).equals(projectIteration.toString())) {
+				criteriaItemIds.add(key.substring(0, separator));
+			}
+		}
+		return criteriaItemIds;
+	}
+
+	public String getBranch() {
+		return branch;
+	}
+
+	public void setBranch(String branch) {
+		this.branch = branch;
+	}
+
+	public Set<String> getSignOffKeys() {
+		return signOffKeys;
+	}
+
+	public void setSignOffKeys(Set<String> signOffKeys) {
+		this.signOffKeys = signOffKeys;
+	}
+
+	public boolean isStale() {
+		return stale;
+	}
+
+	public void setStale(boolean stale) {
+		this.stale = stale;
+	}
+}
@@ -1,6 +1,8 @@
 package org.snomed.aag.data.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Transient;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
@@ -21,6 +23,13 @@ public class CriteriaItemSignOff {
         String USER_ID = "userId";
     }
 
+    /**
+     * Outcome of a bulk sign-off for a single CriteriaItem.
+     */
+    public enum Result {
+        CREATED, ALREADY_PRESENT
+    }
+
     @Id
     @Field(type = FieldType.Keyword)
     @NotBlank
@@ -49,6 +58,10 @@ public class CriteriaItemSignOff {
     @NotBlank
     private final Long branchHeadTimestamp;
 
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Result result;
+
     public CriteriaItemSignOff() {
         this.criteriaItemId = null;
         this.branch = null;
@@ -65,6 +78,20 @@ public class CriteriaItemSignOff {
         this.userId = userId;
         this.timestamp = System.currentTimeMillis();
         this.branchHeadTimestamp = branchHeadTimestamp;
+        this.id = toId(criteriaItemId, branch, projectIteration);
+    }
+
+    /**
+     * Return the document identifier of the sign-off of a CriteriaItem on a branch. There can only be one sign-off per
+     * identifier, so duplicates are rejected by Elasticsearch when writing with op_type create.
+     *
+     * @param criteriaItemId   Identifier of the signed off CriteriaItem.
+     * @param branch           Branch of the sign-off.
+     * @param projectIteration Project iteration of a project level sign-off, or null for a task level sign-off.
+     * @return Document identifier of the sign-off.
+     */
+    public static String toId(String criteriaItemId, String branch, Integer projectIteration) {
+        return criteriaItemId + "|" + branch + "|" + (projectIteration != null ? projectIteration.toString() : "task");
     }
 
     public String getId() {
@@ -102,4 +129,12 @@ public class CriteriaItemSignOff {
     public Long getBranchHeadTimestamp() {
         return branchHeadTimestamp;
     }
+
+    public Result getResult() {
+        return result;
+    }
+
+    public void setResult(Result result) {
+        this.result = result;
+    }
 }
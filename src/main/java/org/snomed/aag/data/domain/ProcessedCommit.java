@@ -0,0 +1,46 @@
+package org.snomed.aag.data.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.Setting;
+
+/**
+ * The newest commit processed for a branch, identified by the branch path.
+ */
+@Document(indexName = "#{@indexNameProvider.getIndexNameWithPrefix('processed-commit')}")
+@Setting(settingPath = "elasticsearch-settings.json")
+public class ProcessedCommit {
+
+	@Id
+	@Field(type = FieldType.Keyword)
+	private String branchPath;
+
+	@Field(type = FieldType.Long)
+	private long headTime;
+
+	@Field(type = FieldType.Long)
+	private long processedDate;
+
+	public ProcessedCommit() {
+	}
+
+	public ProcessedCommit(String branchPath, long headTime, long processedDate) {
+		this.branchPath = branchPath;
+		this.headTime = headTime;
+		this.processedDate = processedDate;
+	}
+
+	public String getBranchPath() {
+		return branchPath;
+	}
+
+	public long getHeadTime() {
+		return headTime;
+	}
+
+	public long getProcessedDate() {
+		return processedDate;
+	}
+}
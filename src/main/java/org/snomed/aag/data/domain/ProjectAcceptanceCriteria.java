@@ -19,6 +19,11 @@ import java.util.Set;
 @Setting(settingPath = "elasticsearch-settings.json")
 public class ProjectAcceptanceCriteria {
 
+	public interface Fields {
+		String BRANCH_PATH = "branchPath";
+		String PROJECT_ITERATION = "projectIteration";
+	}
+
 	@Id
 	@Field(type = FieldType.Keyword)
 	private String key; //Composite of branchPath and projectIteration
@@ -1,22 +1,39 @@
 package org.snomed.aag.data.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.springframework.data.annotation.Id;
 import org.springframework.data.elasticsearch.annotations.*;
 
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Date;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Objects;
 
 @Document(indexName = "#{@indexNameProvider.getIndexNameWithPrefix('whitelist-item')}")
 @Setting(settingPath = "elasticsearch-settings.json")
 public class WhitelistItem {
+    // Increment when the mapping changes, then migrate existing indices through POST /admin/whitelist-items/migrate-index
+    public static final int MAPPING_VERSION = 2;
+
     public interface Fields {
+        String ID = "id";
         String CREATION_DATE = "creationDate";
         String VALIDATION_RULE_ID = "validationRuleId";
+        String CONCEPT_ID = "conceptId";
+        String COMPONENT_ID = "componentId";
+        String ADDITIONAL_FIELDS = "additionalFields";
         String BRANCH = "branch";
         String TEMPORARY = "temporary";
+        String ANCESTOR_PATHS = "ancestorPaths";
+        String CODE_SYSTEM = "codeSystem";
+        String FINGERPRINT = "fingerprint";
+        String LAST_MODIFIED = "lastModified";
     }
 
     public enum WhitelistItemType {
@@ -51,10 +68,11 @@ public class WhitelistItem {
     @NotBlank
     private String branch;
 
-    @Field(type = FieldType.Keyword)
+    // Only kept in the source, matched through fingerprint
+    @Field(type = FieldType.Keyword, index = false, docValues = false)
     private String additionalFields;
 
-    @Field(type = FieldType.Keyword)
+    @Field(type = FieldType.Keyword, index = false, docValues = false)
     @Size(max = 300)
     private String assertionFailureText;
 
@@ -64,6 +82,70 @@ public class WhitelistItem {
     @Field(type = FieldType.Keyword)
     private String reason;
 
+    // Derived from branch, so that descendants of a branch within a code system can be found with term queries
+    @JsonIgnore
+    @Field(type = FieldType.Keyword)
+    private List<String> ancestorPaths;
+
+    @JsonIgnore
+    @Field(type = FieldType.Keyword)
+    private String codeSystem;
+
+    // Hash of the whitelisted content, see toFingerprint
+    @JsonIgnore
+    @Field(type = FieldType.Keyword)
+    private String fingerprint;
+
+    // Time of the last create or update in milliseconds, orders the whitelist change feed
+    @JsonIgnore
+    @Field(type = FieldType.Long)
+    private Long lastModified;
+
+    /**
+     * Return a stable hash of the content identifying a whitelisted component. A missing componentId or additionalFields
+     * is treated as empty, as that is how they are stored.
+     *
+     * @param validationRuleId Validation rule of the whitelisted component.
+     * @param conceptId        Concept of the whitelisted component.
+     * @param componentId      Whitelisted component.
+     * @param additionalFields Full content of the whitelisted component.
+     * @return Hex encoded SHA-256 hash.
+     */
+    public static String toFingerprint(String validationRuleId, String conceptId, String componentId, String additionalFields) {
+        return sha256(validationRuleId, conceptId, Objects.requireNonNullElse(componentId, ""), Objects.requireNonNullElse(additionalFields, ""));
+    }
+
+    /**
+     * Return the document identifier of the whitelist item with the given fingerprint on the given branch, so that the same
+     * content can only be whitelisted once per branch and type. Temporary and permanent items are kept apart, as temporary
+     * items are removed once the code system is versioned.
+     *
+     * @param branch      Branch of the whitelist item.
+     * @param fingerprint Fingerprint of the whitelist item.
+     * @param temporary   Whether the whitelist item is temporary.
+     * @return Hex encoded SHA-256 hash.
+     */
+    public static String toId(String branch, String fingerprint, boolean temporary) {
+        return temporary ? sha256(branch, fingerprint, Fields.TEMPORARY) : sha256(branch, fingerprint);
+    }
+
+    private static String sha256(String... values) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            for (String value : values) {
+                if (value != null) {
+                    messageDigest.update(value.getBytes(StandardCharsets.UTF_8));
+                }
+                // Separator, so that values cannot run into each other
+                messageDigest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(messageDigest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            // Should never happen as every Java platform supports SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
     public String getId() {
         return id;
     }
@@ -161,6 +243,38 @@ public class WhitelistItem {
         return reason;
     }
 
+    public List<String> getAncestorPaths() {
+        return ancestorPaths;
+    }
+
+    public void setAncestorPaths(List<String> ancestorPaths) {
+        this.ancestorPaths = ancestorPaths;
+    }
+
+    public String getCodeSystem() {
+        return codeSystem;
+    }
+
+    public void setCodeSystem(String codeSystem) {
+        this.codeSystem = codeSystem;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public Long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(Long lastModified) {
+        this.lastModified = lastModified;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
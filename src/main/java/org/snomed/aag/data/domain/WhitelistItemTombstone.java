@@ -0,0 +1,69 @@
+package org.snomed.aag.data.domain;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.Setting;
+
+import java.util.List;
+
+/**
+ * Record of a deleted {@link WhitelistItem}, so that the deletion can be included in the whitelist change feed. Branch fields
+ * are copied from the deleted item, so that tombstones are matched by branch in the same way as items.
+ */
+@Document(indexName = "#{@indexNameProvider.getIndexNameWithPrefix('whitelist-item-tombstone')}")
+@Setting(settingPath = "elasticsearch-settings.json")
+public class WhitelistItemTombstone {
+
+	public interface Fields {
+		String DELETION_DATE = "deletionDate";
+	}
+
+	@Id
+	@Field(type = FieldType.Keyword)
+	private String id;
+
+	@Field(type = FieldType.Keyword)
+	private String branch;
+
+	@Field(type = FieldType.Keyword)
+	private List<String> ancestorPaths;
+
+	@Field(type = FieldType.Keyword)
+	private String codeSystem;
+
+	@Field(type = FieldType.Long)
+	private long deletionDate;
+
+	public WhitelistItemTombstone() {
+	}
+
+	public WhitelistItemTombstone(WhitelistItem whitelistItem, long deletionDate) {
+		this.id = whitelistItem.getId();
+		this.branch = whitelistItem.getBranch();
+		this.ancestorPaths = whitelistItem.getAncestorPaths();
+		this.codeSystem = whitelistItem.getCodeSystem();
+		this.deletionDate = deletionDate;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getBranch() {
+		return branch;
+	}
+
+	public List<String> getAncestorPaths() {
+		return ancestorPaths;
+	}
+
+	public String getCodeSystem() {
+		return codeSystem;
+	}
+
+	public long getDeletionDate() {
+		return deletionDate;
+	}
+}
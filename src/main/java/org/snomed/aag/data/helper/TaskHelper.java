@@ -0,0 +1,44 @@
+package org.snomed.aag.data.helper;
+
+import co.elastic.clients.elasticsearch.tasks.GetTasksResponse;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+
+import java.time.Duration;
+
+public class TaskHelper {
+	private static final long POLL_MILLIS = 1_000;
+
+	/**
+	 * Wait for an Elasticsearch task started without waiting for completion. Long running reindex and delete-by-query requests
+	 * are run as tasks, as they would outlast the client's socket timeout.
+	 *
+	 * @param elasticsearchTemplate Template to poll with.
+	 * @param taskId                Task to wait for.
+	 * @param timeout               Longest time to wait, after which the task is cancelled.
+	 * @return Completed task.
+	 * @throws IllegalStateException When the task fails or times out, or the thread is interrupted.
+	 */
+	public static GetTasksResponse awaitTask(ElasticsearchTemplate elasticsearchTemplate, String taskId, Duration timeout) {
+		final long deadline = System.currentTimeMillis() + timeout.toMillis();
+		GetTasksResponse task = elasticsearchTemplate.execute(client -> client.tasks().get(t -> t.taskId(taskId)));
+		while (!task.completed()) {
+			if (System.currentTimeMillis() >= deadline) {
+				elasticsearchTemplate.execute(client -> client.tasks().cancel(c -> c.taskId(taskId)));
+				throw new IllegalStateException(String.format("Task %s did not complete within %s and has been cancelled.", taskId, timeout));
+			}
+			try {
+				Thread.sleep(POLL_MILLIS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for task " + taskId + ".", e);
+			}
+			task = elasticsearchTemplate.execute(client -> client.tasks().get(t -> t.taskId(taskId)));
+		}
+
+		if (task.error() != null) {
+			throw new IllegalStateException(String.format("Task %s failed: %s", taskId, task.error().reason()));
+		}
+
+		return task;
+	}
+}
@@ -0,0 +1,107 @@
+package org.snomed.aag.data.pojo;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+
+public class MaintenanceTask {
+
+	public enum Status {
+		QUEUED, RUNNING, COMPLETED, FAILED
+	}
+
+	private final String id;
+	private final String operation;
+	private final Date queuedDate;
+	private volatile Status status;
+	private volatile Date startDate;
+	private volatile Date endDate;
+	private volatile String message;
+	private volatile String elasticsearchTaskId;
+	private volatile Map<String, Object> result;
+
+	public MaintenanceTask(String operation) {
+		this.id = UUID.randomUUID().toString();
+		this.operation = operation;
+		this.queuedDate = new Date();
+		this.status = Status.QUEUED;
+	}
+
+	public void start() {
+		startDate = new Date();
+		status = Status.RUNNING;
+	}
+
+	public void complete(Map<String, Object> result) {
+		this.result = result;
+		endDate = new Date();
+		status = Status.COMPLETED;
+	}
+
+	public void fail(String message) {
+		this.message = message;
+		endDate = new Date();
+		status = Status.FAILED;
+	}
+
+	@JsonIgnore
+	public boolean isFinished() {
+		return status == Status.COMPLETED || status == Status.FAILED;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getOperation() {
+		return operation;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public Date getQueuedDate() {
+		return queuedDate;
+	}
+
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public Date getEndDate() {
+		return endDate;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	/**
+	 * Return the Elasticsearch task currently run by this task, which can also be followed or cancelled with the Elasticsearch task API.
+	 *
+	 * @return Elasticsearch task identifier, or null when no Elasticsearch task has been started.
+	 */
+	public String getElasticsearchTaskId() {
+		return elasticsearchTaskId;
+	}
+
+	public void setElasticsearchTaskId(String elasticsearchTaskId) {
+		this.elasticsearchTaskId = elasticsearchTaskId;
+	}
+
+	public Map<String, Object> getResult() {
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "MaintenanceTask{" +
+				"id='" + id + '\'' +
+				", operation='" + operation + '\'' +
+				", status=" + status +
+				'}';
+	}
+}
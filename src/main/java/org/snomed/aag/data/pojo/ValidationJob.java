@@ -0,0 +1,86 @@
+package org.snomed.aag.data.pojo;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.Date;
+import java.util.UUID;
+
+public class ValidationJob {
+
+	public enum Status {
+		QUEUED, RUNNING, COMPLETED, FAILED
+	}
+
+	private final String id;
+	private final String branchPath;
+	private final Date queuedDate;
+	private volatile Status status;
+	private volatile Date startDate;
+	private volatile Date endDate;
+	private volatile String message;
+
+	public ValidationJob(String branchPath) {
+		this.id = UUID.randomUUID().toString();
+		this.branchPath = branchPath;
+		this.queuedDate = new Date();
+		this.status = Status.QUEUED;
+	}
+
+	public void start() {
+		startDate = new Date();
+		status = Status.RUNNING;
+	}
+
+	public void complete() {
+		endDate = new Date();
+		status = Status.COMPLETED;
+	}
+
+	public void fail(String message) {
+		this.message = message;
+		endDate = new Date();
+		status = Status.FAILED;
+	}
+
+	@JsonIgnore
+	public boolean isFinished() {
+		return status == Status.COMPLETED || status == Status.FAILED;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getBranchPath() {
+		return branchPath;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public Date getQueuedDate() {
+		return queuedDate;
+	}
+
+	public Date getStartDate() {
+		return startDate;
+	}
+
+	public Date getEndDate() {
+		return endDate;
+	}
+
+	public String getMessage() {
+		return message;
+	}
+
+	@Override
+	public String toString() {
+		return "ValidationJob{" +
+				"id='" + id + '\'' +
+				", branchPath='" + branchPath + '\'' +
+				", status=" + status +
+				'}';
+	}
+}
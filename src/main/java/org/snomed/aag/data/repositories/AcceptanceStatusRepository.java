@@ -0,0 +1,7 @@
+package org.snomed.aag.data.repositories;
+
+import org.snomed.aag.data.domain.AcceptanceStatus;
+import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
+
+public interface AcceptanceStatusRepository extends ElasticsearchRepository<AcceptanceStatus, String> {
+}
@@ -0,0 +1,7 @@
+package org.snomed.aag.data.repositories;
+
+import org.snomed.aag.data.domain.ProcessedCommit;
+import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
+
+public interface ProcessedCommitRepository extends ElasticsearchRepository<ProcessedCommit, String> {
+}
@@ -0,0 +1,7 @@
+package org.snomed.aag.data.repositories;
+
+import org.snomed.aag.data.domain.WhitelistItemTombstone;
+import org.springframework.data.elasticsearch.repository.ElasticsearchRepository;
+
+public interface WhitelistItemTombstoneRepository extends ElasticsearchRepository<WhitelistItemTombstone, String> {
+}
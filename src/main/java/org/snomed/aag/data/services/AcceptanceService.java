@@ -13,7 +13,6 @@ import org.snomed.aag.data.pojo.CommitInformation;
 import org.snomed.aag.data.pojo.ValidationInformation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
@@ -43,6 +42,9 @@ public class AcceptanceService {
 	@Autowired
 	private CriteriaItemSignOffFactory criteriaItemSignOffFactory;
 
+	@Autowired
+	private CommitLedger commitLedger;
+
 	private static final Logger LOGGER = LoggerFactory.getLogger(AcceptanceService.class);
 
 	/**
@@ -62,12 +64,8 @@ public class AcceptanceService {
 		Set<String> criteriaIdentifiers = getCriteriaIdentifiersOrThrow(projectAcceptanceCriteria, branchPath);
 
 		// Only create CriteriaItems if they exist
-		Set<CriteriaItem> criteriaItemsToAccept = new HashSet<>();
-		for (String criteriaIdentifier : criteriaIdentifiers) {
-			CriteriaItem criteriaItem = criteriaItemService.findByIdOrThrow(criteriaIdentifier);
-			securityService.verifyBranchRole(branchPath, criteriaItem.getRequiredRoles());
-			criteriaItemsToAccept.add(criteriaItem);
-		}
+		Set<CriteriaItem> criteriaItemsToAccept = criteriaItemService.findAllByIdentifiersOrThrow(criteriaIdentifiers);
+		securityService.verifyBranchRoles(branchPath, criteriaItemsToAccept.stream().map(CriteriaItem::getRequiredRoles).collect(Collectors.toList()));
 
 		// Verification complete; add record(s)
 		return criteriaItemSignOffService.createAll(criteriaItemsToAccept, branchPath, projectAcceptanceCriteria.getProjectIteration(), branch.getHeadTimestamp(), projectAcceptanceCriteria);
@@ -89,7 +87,7 @@ public class AcceptanceService {
 		Set<String> criteriaIdentifiers = getCriteriaIdentifiersOrThrow(projectAcceptanceCriteria, branchPath);
 
 		// Verification complete; remove record(s)
-		criteriaItemSignOffService.deleteFrom(criteriaIdentifiers, branchPath, projectAcceptanceCriteria.getProjectIteration(), projectAcceptanceCriteria);
+		criteriaItemSignOffService.deleteFrom(criteriaIdentifiers, branchPath, projectAcceptanceCriteria.getProjectIteration(), projectAcceptanceCriteria, false);
 	}
 
 	/**
@@ -138,11 +136,33 @@ public class AcceptanceService {
 	}
 
 	/**
-	 * Use a Snowstorm commit to automatically accept classification items and reject any automatically expiring items
+	 * Use a Snowstorm commit to automatically accept classification items and reject any automatically expiring items.
+	 * A commit is skipped if it, or a later commit, has already been processed for the branch, see {@link CommitLedger}.
 	 * @param commitInformation Commit information including branch path and metadata.
 	 */
 	public void processCommit(CommitInformation commitInformation) {
+		processCommit(commitInformation, true);
+	}
+
+	/**
+	 * Process a commit as {@link #processCommit(CommitInformation)}, optionally without the roles of the current user.
+	 *
+	 * @param commitInformation Commit information including branch path and metadata.
+	 * @param checkUserRoles    Whether the roles of the current user on the branch can be fetched from Snowstorm. When false,
+	 *                          items requiring a role are never automatically accepted.
+	 */
+	void processCommit(CommitInformation commitInformation, boolean checkUserRoles) {
 		String branchPathReceivingChanges = commitInformation.getBranchPathReceivingChanges();
+		if (!commitLedger.shouldProcess(branchPathReceivingChanges, commitInformation.getHeadTime())) {
+			LOGGER.info("Skipping commit {} as the same or a later commit has been processed for branch {}.", commitInformation, branchPathReceivingChanges);
+			return;
+		}
+
+		processNewCommit(commitInformation, branchPathReceivingChanges, checkUserRoles);
+		commitLedger.record(branchPathReceivingChanges, commitInformation.getHeadTime());
+	}
+
+	private void processNewCommit(CommitInformation commitInformation, String branchPathReceivingChanges, boolean checkUserRoles) {
 		final ProjectAcceptanceCriteria criteria = criteriaService.findByBranchPathWithRelevantCriteriaItems(branchPathReceivingChanges, true);
 		if (criteria == null) {
 			LOGGER.info("ProjectAcceptanceCriteria not found for branch; nothing to process.");
@@ -154,13 +174,13 @@ public class AcceptanceService {
 		Integer projectIteration = criteria.getProjectIteration();
 		if (commitInformation.isContent()) {
 			Set<String> itemsAlreadyAccepted = getCriteriaItemsAlreadyAccepted(criteriaItems, itemsToReject);
-			Set<String> itemsShouldBeAccepted = getCriteriaItemsThatShouldBeAccepted(commitInformation, criteria, branchPathReceivingChanges, criteriaItems);
+			Set<String> itemsShouldBeAccepted = getCriteriaItemsThatShouldBeAccepted(commitInformation, criteria, branchPathReceivingChanges, criteriaItems, checkUserRoles);
 			persistItemsShouldBeAccepted(itemsShouldBeAccepted, itemsAlreadyAccepted, branchPathReceivingChanges, commitInformation.getHeadTime(), projectIteration, criteria);
 		}
 
 		if (!itemsToReject.isEmpty()) {
 			LOGGER.info("Rejecting items {} for branch {}, iteration {}", itemsToReject, branchPathReceivingChanges, projectIteration);
-			criteriaItemSignOffService.deleteFrom(itemsToReject, branchPathReceivingChanges, projectIteration, criteria);
+			criteriaItemSignOffService.deleteFrom(itemsToReject, branchPathReceivingChanges, projectIteration, criteria, true);
 		} else {
 			LOGGER.info("No Criteria Items to reject.");
 		}
@@ -170,46 +190,41 @@ public class AcceptanceService {
 	 * Mark relevant CriteriaItem as complete if the corresponding validation report has no errors.
 	 *
 	 * @param validationInformation Validation information including branchPath and URL to report.
+	 * @throws RestClientException When Branch or validation report cannot be read.
 	 */
-	@Async
-	public void processValidationAsync(ValidationInformation validationInformation) {
-		try {
-			final String branchPath = validationInformation.getBranchPath();
-			final ProjectAcceptanceCriteria criteria = criteriaService.findByBranchPathWithRelevantCriteriaItems(branchPath, true);
-			if (criteria == null) {
-				return;
-			}
-
-			final Branch branch = securityService.getBranchOrThrow(branchPath);
-			if (validationService.isReportClean(validationInformation.getReportUrl(), branch.getHeadTimestamp(), branchPath)) {
-
-				final Set<CriteriaItem> items = criteriaService.findItemsAndMarkSignOff(criteria, branchPath);
-
-				Set<String> itemsShouldBeAccepted = items.stream()
-						.filter(item ->
-								{
-									String itemId = item.getId();
-									boolean branchProjectLevel = criteria.isBranchProjectLevel(branchPath);
-									if (branchProjectLevel && (CriteriaItem.PROJECT_VALIDATION_CLEAN.equals(itemId) || CriteriaItem.PROJECT_VALIDATION_CLEAN_MS.equals(itemId))) {
-										return true;
-									}
-
-									boolean branchTaskLevel = criteria.isBranchTaskLevel(branchPath);
-									if (branchTaskLevel && (CriteriaItem.TASK_VALIDATION_CLEAN.equals(itemId) || CriteriaItem.TASK_VALIDATION_CLEAN_MS.equals(itemId))) {
-										return true;
-									}
-
-									return false;
+	public void processValidation(ValidationInformation validationInformation) throws RestClientException {
+		final String branchPath = validationInformation.getBranchPath();
+		final ProjectAcceptanceCriteria criteria = criteriaService.findByBranchPathWithRelevantCriteriaItems(branchPath, true);
+		if (criteria == null) {
+			return;
+		}
+
+		final Branch branch = securityService.getBranchOrThrow(branchPath);
+		if (validationService.isReportClean(validationInformation.getReportUrl(), branch.getHeadTimestamp(), branchPath)) {
+
+			final Set<CriteriaItem> items = criteriaService.findItemsAndMarkSignOff(criteria, branchPath);
+
+			Set<String> itemsShouldBeAccepted = items.stream()
+					.filter(item ->
+							{
+								String itemId = item.getId();
+								boolean branchProjectLevel = criteria.isBranchProjectLevel(branchPath);
+								if (branchProjectLevel && (CriteriaItem.PROJECT_VALIDATION_CLEAN.equals(itemId) || CriteriaItem.PROJECT_VALIDATION_CLEAN_MS.equals(itemId))) {
+									return true;
+								}
+
+								boolean branchTaskLevel = criteria.isBranchTaskLevel(branchPath);
+								if (branchTaskLevel && (CriteriaItem.TASK_VALIDATION_CLEAN.equals(itemId) || CriteriaItem.TASK_VALIDATION_CLEAN_MS.equals(itemId))) {
+									return true;
 								}
-						)
-						.map(CriteriaItem::getId)
-						.collect(Collectors.toSet());
 
-				persistItemsShouldBeAccepted(itemsShouldBeAccepted, getAcceptedItemIds(items), branchPath, branch.getHeadTimestamp(), criteria.getProjectIteration(), criteria);
-			}
+								return false;
+							}
+					)
+					.map(CriteriaItem::getId)
+					.collect(Collectors.toSet());
 
-		} catch (RestClientException e) {
-			LOGGER.error("Failed to handle validation complete notification.", e);
+			persistItemsShouldBeAccepted(itemsShouldBeAccepted, getAcceptedItemIds(items), branchPath, branch.getHeadTimestamp(), criteria.getProjectIteration(), criteria);
 		}
 	}
 
@@ -231,14 +246,35 @@ public class AcceptanceService {
 		}
 	}
 
-	private boolean userHasRole(CriteriaItem item, Set<String> branchRoles) {
-		final boolean contains = CollectionUtils.isEmpty(item.getRequiredRoles()) || branchRoles.stream().filter(item.getRequiredRoles()::contains).count() > 0;
+	private boolean userHasRole(CriteriaItem item, Set<Set<String>> unsatisfiedRoleSets) {
+		final boolean contains = CollectionUtils.isEmpty(item.getRequiredRoles()) || !unsatisfiedRoleSets.contains(item.getRequiredRoles());
 		if (!contains) {
 			LOGGER.debug("User does not have sufficient roles to change item {}", item.getId());
 		}
 		return contains;
 	}
 
+	private Set<Set<String>> getRequiredRoleSets(Set<CriteriaItem> criteriaItems) {
+		return criteriaItems.stream()
+				.map(CriteriaItem::getRequiredRoles)
+				.filter(requiredRoles -> !CollectionUtils.isEmpty(requiredRoles))
+				.collect(Collectors.toSet());
+	}
+
+	private Set<Set<String>> getUnsatisfiedRoleSets(String branchPath, Set<CriteriaItem> criteriaItems) {
+		final Set<Set<String>> requiredRoleSets = getRequiredRoleSets(criteriaItems);
+		if (requiredRoleSets.isEmpty()) {
+			return Collections.emptySet();
+		}
+
+		try {
+			return securityService.findUnsatisfiedRoleSets(branchPath, requiredRoleSets);
+		} catch (RestClientException e) {
+			LOGGER.debug("Failed to fetch branch roles for {}.", branchPath, e);
+			return requiredRoleSets;
+		}
+	}
+
 	private ProjectAcceptanceCriteria getProjectAcceptanceCriteriaForAcceptRejectRequestOrThrow(String branchPath, String criteriaItemId) {
 		//Verify CriteriaItems
 		CriteriaItem criteriaItem = criteriaItemService.findByIdOrThrow(criteriaItemId);
@@ -306,7 +342,8 @@ public class AcceptanceService {
 				.collect(Collectors.toSet());
 	}
 
-	private Set<String> getCriteriaItemsThatShouldBeAccepted(CommitInformation commitInformation, ProjectAcceptanceCriteria criteria, String branchPath, Set<CriteriaItem> criteriaItems) {
+	private Set<String> getCriteriaItemsThatShouldBeAccepted(CommitInformation commitInformation, ProjectAcceptanceCriteria criteria, String branchPath, Set<CriteriaItem> criteriaItems,
+															  boolean checkUserRoles) {
 		boolean classified = commitInformation.isClassified();
 		if (!classified) {
 			LOGGER.info("{} will not be automatically marked as complete for {} as the branch is not classified.", CriteriaItem.PROJECT_CLASSIFICATION_CLEAN, branchPath);
@@ -316,32 +353,26 @@ public class AcceptanceService {
 
 		boolean projectLevel = criteria.isBranchProjectLevel(branchPath);
 		boolean taskLevel = criteria.isBranchTaskLevel(branchPath);
-		final Set<String> branchRoles = securityService.getBranchRoles(branchPath);
+		final Set<CriteriaItem> candidates = criteriaItems
+				.stream()
+				.filter(item -> (CriteriaItem.PROJECT_CLASSIFICATION_CLEAN.equals(item.getId()) && projectLevel)
+						|| (CriteriaItem.TASK_CLASSIFICATION_CLEAN.equals(item.getId()) && taskLevel))
+				.collect(Collectors.toSet());
+		// Roles for all candidates are resolved against a single fetch of the branch
+		final Set<Set<String>> unsatisfiedRoleSets = checkUserRoles ? getUnsatisfiedRoleSets(branchPath, candidates) : getRequiredRoleSets(candidates);
 		// Includes role check
-		return criteriaItems
+		return candidates
 				.stream()
 				.filter(item ->
 						{
-							boolean userHasRole = userHasRole(item, branchRoles);
+							boolean userHasRole = userHasRole(item, unsatisfiedRoleSets);
 							if (!userHasRole) {
 								LOGGER.info("{} will not be marked as complete as the user does not have the required role for actioning the item. Required roles: {}", item.getId(), item.getRequiredRoles());
 								return false;
 							}
 
-							String criteriaItemId = item.getId();
-							boolean projectClassificationClean = criteriaItemId.equals(CriteriaItem.PROJECT_CLASSIFICATION_CLEAN) && projectLevel;
-							if (projectClassificationClean) {
-								LOGGER.info("{} will be marked as complete for {}.", CriteriaItem.PROJECT_CLASSIFICATION_CLEAN, branchPath);
-								return true;
-							}
-
-							boolean taskClassificationClean = criteriaItemId.equals(CriteriaItem.TASK_CLASSIFICATION_CLEAN) && taskLevel;
-							if (taskClassificationClean) {
-								LOGGER.info("{} will be marked as complete for {}.", CriteriaItem.TASK_CLASSIFICATION_CLEAN, branchPath);
-								return true;
-							}
-
-							return false;
+							LOGGER.info("{} will be marked as complete for {}.", item.getId(), branchPath);
+							return true;
 						}
 				)
 				.map(CriteriaItem::getId)
@@ -0,0 +1,240 @@
+package org.snomed.aag.data.services;
+
+import co.elastic.clients.elasticsearch._types.ElasticsearchException;
+import co.elastic.clients.elasticsearch._types.OpType;
+import co.elastic.clients.elasticsearch.core.GetResponse;
+import co.elastic.clients.json.JsonData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.aag.data.domain.AcceptanceStatus;
+import org.snomed.aag.data.domain.CriteriaItemSignOff;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.bool;
+import static org.snomed.aag.data.Constants.LARGE_PAGE;
+import static org.snomed.aag.data.helper.QueryHelper.termQuery;
+
+/**
+ * Maintains the materialized {@link AcceptanceStatus} of each branch.
+ * <p>
+ * CriteriaItemSignOff remains the source of truth. Changes to sign-offs are applied to the status with a scripted update;
+ * when no status exists yet a stale placeholder is created instead, so that a status is never built from a partial view.
+ * Missing or stale statuses are rebuilt from CriteriaItemSignOff on read. Sign-offs may be written without refresh, so the
+ * rebuild refreshes them before searching; a sign-off change recorded after that still rewrites the stale status, and the
+ * rebuild's conditional write then fails, leaving the status stale for the next read.
+ * <p>
+ * Sign-offs and their status are written separately. When a status cannot be updated after its sign-offs have changed, it
+ * is marked stale instead, so that it is rebuilt rather than trusted by the promotion gate.
+ */
+@Service
+public class AcceptanceStatusService {
+
+	// A stale status is rewritten unchanged, so that its seqNo moves on and a rebuild in progress does not overwrite it
+	private static final String UPDATE_SCRIPT = """
+			if (ctx._source.stale != true) {
+				if (ctx._source.signOffKeys == null) {
+					ctx._source.signOffKeys = new ArrayList();
+				}
+				def keys = ctx._source.signOffKeys;
+				def removeItems = params.removeItems;
+				keys.removeAll(params.removeKeys);
+				keys.removeIf(key -> removeItems.contains(key.substring(0, key.lastIndexOf('|'))));
+				for (key in params.addKeys) {
+					if (!keys.contains(key)) {
+						keys.add(key);
+					}
+				}
+			}""";
+
+	// Keys of a stale status are never read, so they are dropped rather than kept in an unknown state
+	private static final String MARK_STALE_SCRIPT = """
+			ctx._source.stale = true;
+			ctx._source.signOffKeys = new ArrayList();""";
+
+	@Autowired
+	private ElasticsearchTemplate elasticsearchTemplate;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * Return identifiers of signed off CriteriaItems for the given branch.
+	 *
+	 * @param branchPath       Branch to read.
+	 * @param projectIteration Project iteration to match for project level sign-offs, or null for task level sign-offs.
+	 * @return Identifiers of signed off CriteriaItems.
+	 */
+	public Set<String> findSignedOffItemIds(String branchPath, Integer projectIteration) {
+		final GetResponse<AcceptanceStatus> response = elasticsearchTemplate.execute(client -> client.get(g -> g
+				.index(getIndexName())
+				.id(branchPath), AcceptanceStatus.class));
+
+		AcceptanceStatus status = response.found() ? response.source() : null;
+		if (status == null || status.isStale()) {
+			status = rebuild(branchPath, response.found() ? response.seqNo() : null, response.found() ? response.primaryTerm() : null);
+		}
+
+		return status.getSignedOffItemIds(projectIteration);
+	}
+
+	/**
+	 * Record created sign-offs.
+	 *
+	 * @param branchPath           Branch of sign-offs.
+	 * @param criteriaItemSignOffs Created sign-offs.
+	 */
+	public void addSignOffs(String branchPath, Collection<CriteriaItemSignOff> criteriaItemSignOffs) {
+		if (criteriaItemSignOffs.isEmpty()) {
+			return;
+		}
+
+		final List<String> keys = criteriaItemSignOffs.stream()
+				.map(signOff -> AcceptanceStatus.toKey(signOff.getCriteriaItemId(), signOff.getProjectIteration()))
+				.toList();
+		update(branchPath, keys, Collections.emptyList(), Collections.emptyList());
+	}
+
+	/**
+	 * Record deleted sign-offs.
+	 *
+	 * @param branchPath       Branch of sign-offs.
+	 * @param criteriaItemIds  Identifiers of CriteriaItems no longer signed off.
+	 * @param projectIteration Project iteration of deleted project level sign-offs, or null when task level sign-offs have been deleted for any iteration.
+	 */
+	public void removeSignOffs(String branchPath, Collection<String> criteriaItemIds, Integer projectIteration) {
+		if (criteriaItemIds.isEmpty()) {
+			return;
+		}
+
+		if (projectIteration != null) {
+			final List<String> keys = criteriaItemIds.stream().map(id -> AcceptanceStatus.toKey(id, projectIteration)).toList();
+			update(branchPath, Collections.emptyList(), keys, Collections.emptyList());
+		} else {
+			update(branchPath, Collections.emptyList(), Collections.emptyList(), new ArrayList<>(criteriaItemIds));
+		}
+	}
+
+	/**
+	 * Mark the status of a branch as stale, so that it is rebuilt from CriteriaItemSignOff on the next read.
+	 *
+	 * @param branchPath Branch of sign-offs.
+	 */
+	public void markStale(String branchPath) {
+		elasticsearchTemplate.execute(client -> client.update(u -> u
+				.index(getIndexName())
+				.id(branchPath)
+				.script(s -> s.inline(i -> i.source(MARK_STALE_SCRIPT)))
+				.upsert(new AcceptanceStatus(branchPath, new HashSet<>(), true))
+				.retryOnConflict(5), AcceptanceStatus.class));
+	}
+
+	/**
+	 * Regenerate all statuses from CriteriaItemSignOff.
+	 *
+	 * @return Number of branches with a regenerated status.
+	 */
+	public int rebuildAll() {
+		elasticsearchTemplate.delete(new NativeQueryBuilder().withQuery(q -> q.matchAll(m -> m)).build(), AcceptanceStatus.class);
+
+		final Set<String> branches = new HashSet<>();
+		try (SearchHitsIterator<CriteriaItemSignOff> stream = elasticsearchTemplate.searchForStream(
+				new NativeQueryBuilder().withQuery(q -> q.matchAll(m -> m)).withPageable(LARGE_PAGE).build(), CriteriaItemSignOff.class)) {
+			stream.forEachRemaining(hit -> branches.add(hit.getContent().getBranch()));
+		}
+
+		for (String branch : branches) {
+			rebuild(branch, null, null);
+		}
+
+		logger.info("Rebuilt acceptance status of {} branches.", branches.size());
+		return branches.size();
+	}
+
+	private void update(String branchPath, List<String> addKeys, List<String> removeKeys, List<String> removeItems) {
+		final Map<String, JsonData> params = Map.of(
+				"addKeys", JsonData.of(addKeys),
+				"removeKeys", JsonData.of(removeKeys),
+				"removeItems", JsonData.of(removeItems));
+
+		try {
+			elasticsearchTemplate.execute(client -> client.update(u -> u
+					.index(getIndexName())
+					.id(branchPath)
+					.script(s -> s.inline(i -> i.source(UPDATE_SCRIPT).params(params)))
+					.upsert(new AcceptanceStatus(branchPath, new HashSet<>(), true))
+					.retryOnConflict(5), AcceptanceStatus.class));
+		} catch (RuntimeException e) {
+			logger.warn("Failed to update acceptance status of {}, marking it stale.", branchPath, e);
+			markStaleOrLog(branchPath);
+			throw e;
+		}
+	}
+
+	private void markStaleOrLog(String branchPath) {
+		try {
+			markStale(branchPath);
+		} catch (RuntimeException e) {
+			logger.error("Failed to mark acceptance status of {} stale; run the acceptance status rebuild.", branchPath, e);
+		}
+	}
+
+	// Build status from CriteriaItemSignOff. Only written if the status has not changed since it was read, identified by seqNo and primaryTerm.
+	private AcceptanceStatus rebuild(String branchPath, Long seqNo, Long primaryTerm) {
+		// Make sign-offs written without refresh before the status was read visible to the search
+		elasticsearchTemplate.indexOps(CriteriaItemSignOff.class).refresh();
+		final Query query = new NativeQueryBuilder()
+				.withQuery(bool(b -> b.must(termQuery(CriteriaItemSignOff.Fields.BRANCH, branchPath))))
+				.withPageable(LARGE_PAGE)
+				.build();
+
+		final Set<String> keys;
+		try (SearchHitsIterator<CriteriaItemSignOff> stream = elasticsearchTemplate.searchForStream(query, CriteriaItemSignOff.class)) {
+			keys = stream.stream()
+					.map(hit -> AcceptanceStatus.toKey(hit.getContent().getCriteriaItemId(), hit.getContent().getProjectIteration()))
+					.collect(Collectors.toSet());
+		}
+
+		final AcceptanceStatus status = new AcceptanceStatus(branchPath, keys, false);
+		try {
+			elasticsearchTemplate.execute(client -> client.index(i -> {
+				i.index(getIndexName()).id(branchPath).document(status);
+				if (seqNo == null) {
+					i.opType(OpType.Create);
+				} else {
+					i.ifSeqNo(seqNo).ifPrimaryTerm(primaryTerm);
+				}
+				return i;
+			}));
+		} catch (RuntimeException e) {
+			if (!isVersionConflict(e)) {
+				throw e;
+			}
+			// A concurrent change got there first; the status is left for the next read to rebuild.
+			logger.debug("Acceptance status of {} not written as it changed during rebuild.", branchPath, e);
+		}
+
+		return status;
+	}
+
+	private static boolean isVersionConflict(Throwable throwable) {
+		for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+			if (cause instanceof OptimisticLockingFailureException
+					|| (cause instanceof ElasticsearchException elasticsearchException && elasticsearchException.status() == 409)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private String getIndexName() {
+		return elasticsearchTemplate.getIndexCoordinatesFor(AcceptanceStatus.class).getIndexName();
+	}
+}
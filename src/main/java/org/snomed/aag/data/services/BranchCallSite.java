@@ -0,0 +1,46 @@
+package org.snomed.aag.data.services;
+
+import java.util.function.Supplier;
+
+/**
+ * Where a Branch is being looked up from. Decides whether stale Branch metadata may be served when Snowstorm is unavailable,
+ * see snowstorm.stale-fallback.call-sites.
+ */
+public enum BranchCallSite {
+
+	// General reads of branch metadata
+	READ,
+
+	// Role checks, including the PermissionEvaluator
+	PERMISSION,
+
+	// The promotion gate, which decides whether a branch may be promoted
+	PROMOTION;
+
+	private static final ThreadLocal<BranchCallSite> CURRENT = new ThreadLocal<>();
+
+	/**
+	 * Run the given task with all Branch lookups on the current thread attributed to this call site.
+	 *
+	 * @param supplier Task to run.
+	 * @return Result of the task.
+	 */
+	public <T> T run(Supplier<T> supplier) {
+		final BranchCallSite previous = CURRENT.get();
+		CURRENT.set(this);
+		try {
+			return supplier.get();
+		} finally {
+			if (previous == null) {
+				CURRENT.remove();
+			} else {
+				CURRENT.set(previous);
+			}
+		}
+	}
+
+	static BranchCallSite currentOr(BranchCallSite defaultCallSite) {
+		final BranchCallSite current = CURRENT.get();
+		return current != null ? current : defaultCallSite;
+	}
+}
@@ -0,0 +1,67 @@
+package org.snomed.aag.data.services;
+
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Branch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Memo of Branches fetched from Snowstorm during a single HTTP request or async job.
+ * While a scope is open on the current thread, each branch path is fetched from Snowstorm at most once.
+ */
+public final class BranchRequestScope {
+
+	private static final ThreadLocal<Map<String, Branch>> BRANCHES = new ThreadLocal<>();
+
+	private BranchRequestScope() {
+	}
+
+	/**
+	 * Open a scope on the current thread, unless one is already open.
+	 *
+	 * @return Whether a new scope was opened, in which case the caller must later call {@link #close()}.
+	 */
+	public static boolean open() {
+		if (BRANCHES.get() != null) {
+			return false;
+		}
+
+		BRANCHES.set(new HashMap<>());
+		return true;
+	}
+
+	/**
+	 * Close the scope on the current thread, discarding any memoized Branches.
+	 */
+	public static void close() {
+		BRANCHES.remove();
+	}
+
+	/**
+	 * Run the given task within a scope. If a scope is already open on the current thread it is reused.
+	 *
+	 * @param runnable Task to run.
+	 */
+	public static void run(Runnable runnable) {
+		boolean opened = open();
+		try {
+			runnable.run();
+		} finally {
+			if (opened) {
+				close();
+			}
+		}
+	}
+
+	static Branch get(String branchPath) {
+		Map<String, Branch> branches = BRANCHES.get();
+		return branches != null ? branches.get(branchPath) : null;
+	}
+
+	static void put(String branchPath, Branch branch) {
+		Map<String, Branch> branches = BRANCHES.get();
+		if (branches != null) {
+			branches.put(branchPath, branch);
+		}
+	}
+}
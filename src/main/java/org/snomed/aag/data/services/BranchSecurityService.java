@@ -1,16 +1,29 @@
 package org.snomed.aag.data.services;
 
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import jakarta.servlet.http.HttpServletResponse;
 import org.ihtsdo.otf.rest.client.RestClientException;
 import org.ihtsdo.otf.rest.client.terminologyserver.SnowstormRestClientFactory;
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Branch;
+import org.ihtsdo.sso.integration.SecurityUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snomed.aag.data.client.SnowstormCircuitBreaker;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
-import java.util.Collections;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 @Service
 public class BranchSecurityService {
@@ -18,10 +31,47 @@ public class BranchSecurityService {
 	// This factory produces clients authenticated as the current user, it has its own client cache.
 	private final SnowstormRestClientFactory snowstormRestClientFactory;
 
+	// Branches shared across requests, keyed by user token and branch path because the Branch includes the user's roles.
+	private final Cache<BranchCacheKey, Branch> branchCache;
+	private final AtomicLong commitInvalidationCount = new AtomicLong();
+
+	// Last known Branches, kept for longer and only served while Snowstorm is unavailable.
+	private final Cache<BranchCacheKey, Branch> staleBranchCache;
+	private final Set<BranchCallSite> staleFallbackCallSites;
+	private final AtomicLong staleServedCount = new AtomicLong();
+	private final SnowstormCircuitBreaker circuitBreaker;
+
+	private static final String WARNING_HEADER = "Warning";
+	private static final String STALE_WARNING = "110 - \"Response is Stale\"";
 	private static final Logger LOGGER = LoggerFactory.getLogger(BranchSecurityService.class);
 
-	public BranchSecurityService(@Value("${snowstorm.url}") String snowstormUrl) {
-		snowstormRestClientFactory = new SnowstormRestClientFactory(snowstormUrl, null);
+	public BranchSecurityService(@Value("${snowstorm.url}") String snowstormUrl,
+								 @Value("${snowstorm.branch-cache.max-size}") long branchCacheMaxSize,
+								 @Value("${snowstorm.branch-cache.ttl-seconds}") long branchCacheTtlSeconds,
+								 @Value("${snowstorm.stale-fallback.ttl-seconds}") long staleTtlSeconds,
+								 @Value("${snowstorm.stale-fallback.call-sites}") Set<BranchCallSite> staleFallbackCallSites,
+								 SnowstormCircuitBreaker circuitBreaker) {
+		this(new SnowstormRestClientFactory(snowstormUrl, null), branchCacheMaxSize, branchCacheTtlSeconds, staleTtlSeconds,
+				staleFallbackCallSites, circuitBreaker, Ticker.systemTicker());
+	}
+
+	// Allows tests to stub Snowstorm and control the time seen by the caches
+	BranchSecurityService(SnowstormRestClientFactory snowstormRestClientFactory, long branchCacheMaxSize, long branchCacheTtlSeconds,
+						  long staleTtlSeconds, Set<BranchCallSite> staleFallbackCallSites, SnowstormCircuitBreaker circuitBreaker, Ticker ticker) {
+		this.snowstormRestClientFactory = snowstormRestClientFactory;
+		branchCache = CacheBuilder.newBuilder()
+				.maximumSize(branchCacheMaxSize)
+				.expireAfterWrite(branchCacheTtlSeconds, TimeUnit.SECONDS)
+				.ticker(ticker)
+				.recordStats()
+				.build();
+		staleBranchCache = CacheBuilder.newBuilder()
+				.maximumSize(branchCacheMaxSize)
+				.expireAfterWrite(staleTtlSeconds, TimeUnit.SECONDS)
+				.ticker(ticker)
+				.build();
+		this.staleFallbackCallSites = staleFallbackCallSites;
+		this.circuitBreaker = circuitBreaker;
 	}
 
 	/**
@@ -33,56 +83,198 @@ public class BranchSecurityService {
 	 * @throws AccessDeniedException    When branch does not exist or when user does not have desired role.
 	 */
 	public void verifyBranchRole(String branchPath, Set<String> requiredRoles) {
-		if (branchPath == null || requiredRoles == null) {
+		verifyBranchRoles(branchPath, Collections.singleton(requiredRoles));
+	}
+
+	/**
+	 * Verify whether the branch has the expected permissions for each of the given role sets. The user must have
+	 * at least one role from every set. The branch is only fetched once, regardless of the number of role sets.
+	 *
+	 * @param branchPath       Branch to check.
+	 * @param requiredRoleSets Role sets, of which the branch should have at least one role each.
+	 * @throws IllegalArgumentException When given illegal arguments.
+	 * @throws AccessDeniedException    When branch does not exist or when user does not have desired role.
+	 */
+	public void verifyBranchRoles(String branchPath, Collection<Set<String>> requiredRoleSets) {
+		if (branchPath == null || requiredRoleSets == null || requiredRoleSets.stream().anyMatch(Objects::isNull)) {
 			LOGGER.error("Cannot verify branch permissions as given illegal arguments.");
-			LOGGER.debug("branchPath: {}, requiredRole: {}", branchPath, requiredRoles);
+			LOGGER.debug("branchPath: {}, requiredRoles: {}", branchPath, requiredRoleSets);
 			throw new IllegalArgumentException("Cannot verify branch permission.");
 		}
 
 		try {
-			boolean contains = false;
-			for (String role : requiredRoles) {
-				if (currentUserHasRoleOnBranch(role, branchPath)) {
-					contains = true;
-					break;
-				}
-			}
-			if (!contains) {
-				LOGGER.info("User does not have desired role of {}.", requiredRoles);
+			Set<Set<String>> unsatisfiedRoleSets = findUnsatisfiedRoleSets(branchPath, requiredRoleSets);
+			if (!unsatisfiedRoleSets.isEmpty()) {
+				LOGGER.info("User does not have desired role of {}.", unsatisfiedRoleSets);
 				throw new AccessDeniedException("User does not have desired role.");
 			}
 		} catch (RestClientException e) {
-			LOGGER.error("Cannot verify request for branch {} with requiredRole {}.", branchPath, requiredRoles);
+			LOGGER.error("Cannot verify request for branch {} with requiredRoles {}.", branchPath, requiredRoleSets);
 			LOGGER.debug(e.getMessage());
 			throw new AccessDeniedException("Could not ascertain user roles: Failed to communication with Snowstorm.", e);
 		}
 	}
 
+	/**
+	 * Return the role sets for which the current user has none of the roles on the branch. An empty role set is never satisfied.
+	 * The branch is only fetched once, regardless of the number of role sets.
+	 *
+	 * @param branchPath       Branch to check.
+	 * @param requiredRoleSets Role sets to check.
+	 * @return Role sets for which the current user has none of the roles.
+	 * @throws RestClientException   When communication with Snowstorm fails.
+	 * @throws AccessDeniedException When branch does not exist.
+	 */
+	public Set<Set<String>> findUnsatisfiedRoleSets(String branchPath, Collection<Set<String>> requiredRoleSets) throws RestClientException {
+		final Set<String> userRoles = getCurrentUserRoles(branchPath);
+		return requiredRoleSets.stream()
+				.filter(requiredRoles -> requiredRoles.stream().noneMatch(userRoles::contains))
+				.collect(Collectors.toSet());
+	}
+
 	public boolean currentUserHasRoleOnBranch(String role, String branchPath) throws RestClientException {
+		return getCurrentUserRoles(branchPath).contains(role);
+	}
+
+	/**
+	 * Return Branch from Snowstorm. When called within a {@link BranchRequestScope}, each branch path is only fetched once.
+	 * Branches are also shared between requests of the same user until they expire or a commit is reported on the branch,
+	 * or one of its ancestors, see {@link #invalidateBranchCache(String, long)}.
+	 * <p>
+	 * Calls to Snowstorm go through a {@link SnowstormCircuitBreaker}. While Snowstorm is unavailable, the last known Branch
+	 * is served instead if the {@link BranchCallSite} allows it, and the response is marked as stale.
+	 *
+	 * @param branchPath Branch to fetch.
+	 * @return Branch from Snowstorm.
+	 * @throws RestClientException   When communication with Snowstorm fails.
+	 * @throws AccessDeniedException When branch does not exist.
+	 */
+	public Branch getBranchOrThrow(String branchPath) throws RestClientException {
+		return getBranchOrThrow(branchPath, BranchCallSite.currentOr(BranchCallSite.READ));
+	}
+
+	/**
+	 * Evict cached Branches, for all users, that have been changed by a commit. Entries for the given branch are evicted
+	 * unless they already have the given head time; entries for descendant branches are always evicted.
+	 *
+	 * @param branchPath Branch which received a commit.
+	 * @param headTime   Head time of the branch after the commit.
+	 */
+	public void invalidateBranchCache(String branchPath, long headTime) {
+		if (branchPath == null) {
+			return;
+		}
+
+		final String descendantPrefix = branchPath + "/";
+		final int sizeBefore = branchCache.asMap().size();
+		branchCache.asMap().entrySet().removeIf(entry -> {
+			String cachedPath = entry.getKey().branchPath();
+			if (cachedPath.equals(branchPath)) {
+				Long cachedHeadTime = entry.getValue().getHeadTimestamp();
+				return cachedHeadTime == null || cachedHeadTime != headTime;
+			}
+			return cachedPath.startsWith(descendantPrefix);
+		});
+
+		final int evicted = sizeBefore - branchCache.asMap().size();
+		if (evicted > 0) {
+			commitInvalidationCount.addAndGet(evicted);
+			LOGGER.debug("Evicted {} cached branches after commit on {} at {}.", evicted, branchPath, headTime);
+		}
+	}
+
+	/**
+	 * Return statistics of the shared Branch cache.
+	 *
+	 * @return Statistics of the shared Branch cache.
+	 */
+	public Map<String, Object> getBranchCacheStats() {
+		final CacheStats stats = branchCache.stats();
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("size", branchCache.size());
+		result.put("hitCount", stats.hitCount());
+		result.put("missCount", stats.missCount());
+		result.put("hitRate", stats.hitRate());
+		result.put("evictionCount", stats.evictionCount());
+		result.put("commitInvalidationCount", commitInvalidationCount.get());
+		result.put("staleServedCount", staleServedCount.get());
+		result.put("circuitState", circuitBreaker.getState());
+		result.put("circuitRejectedCount", circuitBreaker.getRejectedCount());
+		return result;
+	}
+
+	private BranchCacheKey getCacheKey(String branchPath) {
+		final String authenticationToken = SecurityUtil.getAuthenticationToken();
+		if (!StringUtils.hasLength(authenticationToken)) {
+			return null;
+		}
+
+		return new BranchCacheKey(authenticationToken, branchPath);
+	}
+
+	private Set<String> getCurrentUserRoles(String branchPath) throws RestClientException {
+		final BranchCallSite callSite = BranchCallSite.currentOr(BranchCallSite.PERMISSION);
 		if (branchPath.equals("global")) {
-			return getBranchOrThrow("MAIN").getGlobalUserRoles().contains(role);
+			return getBranchOrThrow("MAIN", callSite).getGlobalUserRoles();
 		} else {
-			return getBranchOrThrow(branchPath).getUserRoles().contains(role);
+			return getBranchOrThrow(branchPath, callSite).getUserRoles();// This already includes any global roles
 		}
 	}
 
-	public Branch getBranchOrThrow(String branchPath) throws RestClientException {
-		final Branch branch = snowstormRestClientFactory.getClient().getBranch(branchPath);
+	private Branch getBranchOrThrow(String branchPath, BranchCallSite callSite) throws RestClientException {
+		Branch branch = BranchRequestScope.get(branchPath);
+		if (branch != null) {
+			return branch;
+		}
+
+		final BranchCacheKey cacheKey = getCacheKey(branchPath);
+		if (cacheKey != null) {
+			branch = branchCache.getIfPresent(cacheKey);
+		}
+
 		if (branch == null) {
-			throw new AccessDeniedException("Branch does not exist.");
+			try {
+				branch = circuitBreaker.call(() -> snowstormRestClientFactory.getClient().getBranch(branchPath));
+			} catch (SnowstormCircuitBreaker.CallNotPermittedException e) {
+				// Stale Branches are not memoized, so a later call site in the same request makes its own decision
+				return getStaleBranchOrThrow(cacheKey, branchPath, callSite, e);
+			}
+			if (branch == null) {
+				throw new AccessDeniedException("Branch does not exist.");
+			}
+			if (cacheKey != null) {
+				branchCache.put(cacheKey, branch);
+				staleBranchCache.put(cacheKey, branch);
+			}
 		}
+
+		BranchRequestScope.put(branchPath, branch);
 		return branch;
 	}
 
-	public Set<String> getBranchRoles(String branchPath) {
-		try {
-			final Branch branch = getBranchOrThrow(branchPath);
-			if (branch != null) {
-				return branch.getUserRoles();// This already includes any global roles
+	private Branch getStaleBranchOrThrow(BranchCacheKey cacheKey, String branchPath, BranchCallSite callSite,
+										 SnowstormCircuitBreaker.CallNotPermittedException e) throws RestClientException {
+		Branch branch = null;
+		if (cacheKey != null && staleFallbackCallSites.contains(callSite)) {
+			branch = staleBranchCache.getIfPresent(cacheKey);
+		}
+		if (branch == null) {
+			LOGGER.warn("{} No stale branch {} can be served for {}.", e.getMessage(), branchPath, callSite);
+			throw e;
+		}
+
+		LOGGER.warn("{} Serving stale branch {} for {}.", e.getMessage(), branchPath, callSite);
+		staleServedCount.incrementAndGet();
+		final RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+		if (requestAttributes instanceof ServletRequestAttributes servletRequestAttributes) {
+			HttpServletResponse response = servletRequestAttributes.getResponse();
+			if (response != null && !response.containsHeader(WARNING_HEADER)) {
+				response.addHeader(WARNING_HEADER, STALE_WARNING);
 			}
-		} catch (RestClientException e) {
-			LOGGER.debug("Failed to fetch branch {}", branchPath, e);
 		}
-		return Collections.emptySet();
+		return branch;
+	}
+
+	private record BranchCacheKey(String authenticationToken, String branchPath) {
 	}
 }
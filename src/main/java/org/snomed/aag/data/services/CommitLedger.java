@@ -0,0 +1,156 @@
+package org.snomed.aag.data.services;
+
+import co.elastic.clients.json.JsonData;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.aag.data.domain.ProcessedCommit;
+import org.snomed.aag.data.repositories.ProcessedCommitRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ledger of the newest commit processed per branch, used to skip commits delivered more than once or after a newer commit.
+ * Processing reads the branch and its sign-offs as they are at the time, so an older commit has nothing left to do.
+ * <p>
+ * Entries are held in memory, least recently used first to go once aag.commit-ledger.max-size is reached. With
+ * aag.commit-ledger.persistent entries are also written to Elasticsearch, so they are shared by all gateway instances and
+ * survive a restart. Stored entries only move forwards: instances recording concurrently keep the newest head timestamp.
+ */
+@Service
+public class CommitLedger {
+
+	// Keeps the newest head timestamp when instances record commits of the same branch out of order
+	private static final String RECORD_SCRIPT = """
+			if (params.headTime > ctx._source.headTime) {
+				ctx._source.headTime = params.headTime;
+				ctx._source.processedDate = params.processedDate;
+			} else {
+				ctx.op = 'none';
+			}""";
+
+	private final ProcessedCommitRepository processedCommitRepository;
+	private final ElasticsearchTemplate elasticsearchTemplate;
+	private final boolean persistent;
+	private final Cache<String, Long> lastProcessedHeadTimes;
+	private final AtomicLong recordedCount = new AtomicLong();
+	private final AtomicLong duplicateSkipCount = new AtomicLong();
+	private final AtomicLong outOfOrderSkipCount = new AtomicLong();
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CommitLedger.class);
+
+	public CommitLedger(ProcessedCommitRepository processedCommitRepository, ElasticsearchTemplate elasticsearchTemplate,
+						@Value("${aag.commit-ledger.max-size}") long maxSize,
+						@Value("${aag.commit-ledger.persistent}") boolean persistent) {
+		this.processedCommitRepository = processedCommitRepository;
+		this.elasticsearchTemplate = elasticsearchTemplate;
+		this.persistent = persistent;
+		lastProcessedHeadTimes = CacheBuilder.newBuilder()
+				.maximumSize(maxSize)
+				.build();
+	}
+
+	/**
+	 * Return whether a commit should be processed, counting it as skipped if not.
+	 *
+	 * @param branchPath Branch receiving the changes.
+	 * @param headTime   Head timestamp of the branch after the commit.
+	 * @return False when a commit at the same or a later head timestamp has been processed for the branch.
+	 */
+	public boolean shouldProcess(String branchPath, long headTime) {
+		if (branchPath == null) {
+			return true;
+		}
+
+		final Long lastProcessedHeadTime = getLastProcessedHeadTime(branchPath);
+		if (lastProcessedHeadTime == null || headTime > lastProcessedHeadTime) {
+			return true;
+		}
+
+		if (headTime == lastProcessedHeadTime) {
+			duplicateSkipCount.incrementAndGet();
+		} else {
+			outOfOrderSkipCount.incrementAndGet();
+		}
+		return false;
+	}
+
+	/**
+	 * Record that a commit has been processed.
+	 *
+	 * @param branchPath Branch receiving the changes.
+	 * @param headTime   Head timestamp of the branch after the commit.
+	 */
+	public void record(String branchPath, long headTime) {
+		if (branchPath == null) {
+			return;
+		}
+
+		final long newest = lastProcessedHeadTimes.asMap().merge(branchPath, headTime, Math::max);
+		recordedCount.incrementAndGet();
+		if (persistent && newest == headTime) {
+			try {
+				store(new ProcessedCommit(branchPath, headTime, System.currentTimeMillis()));
+			} catch (RuntimeException e) {
+				// The commit has been processed; at worst it is processed again elsewhere
+				LOGGER.warn("Failed to persist processed commit {} for branch {}.", headTime, branchPath, e);
+			}
+		}
+	}
+
+	/**
+	 * Forget all processed commits, so that any commit is processed again, e.g. after sign-offs have been changed by hand.
+	 */
+	public void clear() {
+		lastProcessedHeadTimes.invalidateAll();
+		if (persistent) {
+			processedCommitRepository.deleteAll();
+		}
+	}
+
+	/**
+	 * Return statistics of the ledger.
+	 *
+	 * @return Statistics of the ledger.
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("size", lastProcessedHeadTimes.size());
+		result.put("persistent", persistent);
+		result.put("recordedCount", recordedCount.get());
+		result.put("duplicateSkipCount", duplicateSkipCount.get());
+		result.put("outOfOrderSkipCount", outOfOrderSkipCount.get());
+		return result;
+	}
+
+	private void store(ProcessedCommit processedCommit) {
+		final Map<String, JsonData> params = Map.of(
+				"headTime", JsonData.of(processedCommit.getHeadTime()),
+				"processedDate", JsonData.of(processedCommit.getProcessedDate()));
+		elasticsearchTemplate.execute(client -> client.update(u -> u
+				.index(elasticsearchTemplate.getIndexCoordinatesFor(ProcessedCommit.class).getIndexName())
+				.id(processedCommit.getBranchPath())
+				.script(s -> s.inline(i -> i.source(RECORD_SCRIPT).params(params)))
+				.upsert(processedCommit)
+				.retryOnConflict(5), ProcessedCommit.class));
+	}
+
+	private Long getLastProcessedHeadTime(String branchPath) {
+		final Long cached = lastProcessedHeadTimes.getIfPresent(branchPath);
+		if (cached != null || !persistent) {
+			return cached;
+		}
+
+		final Long stored = processedCommitRepository.findById(branchPath).map(ProcessedCommit::getHeadTime).orElse(null);
+		if (stored != null) {
+			lastProcessedHeadTimes.asMap().merge(branchPath, stored, Math::max);
+		}
+		return stored;
+	}
+}
@@ -0,0 +1,18 @@
+package org.snomed.aag.data.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded pool for processing Snowstorm commits in the background, so that processing does not slow down the commit.
+ * With the CALLER_RUNS policy a full pool pushes back on Snowstorm, see {@link InstrumentedExecutor}.
+ */
+@Component
+public class CommitProcessingExecutor extends InstrumentedExecutor {
+
+	public CommitProcessingExecutor(@Value("${aag.commit-executor.pool-size}") int poolSize,
+									@Value("${aag.commit-executor.queue-capacity}") int queueCapacity,
+									@Value("${aag.commit-executor.rejection-policy}") RejectionPolicy rejectionPolicy) {
+		super("commit-processing", poolSize, queueCapacity, rejectionPolicy);
+	}
+}
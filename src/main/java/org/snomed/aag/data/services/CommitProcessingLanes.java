@@ -0,0 +1,211 @@
+package org.snomed.aag.data.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.aag.data.pojo.CommitInformation;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Processes commits one at a time per branch receiving the changes, on the {@link CommitProcessingExecutor}. Commits for
+ * different branches are processed in parallel.
+ * <p>
+ * A commit arriving while the branch is being processed waits in the branch's lane; a later commit for the same branch
+ * replaces it. Processing reads the branch and its sign-offs as they are at the time, so the newest commit leaves the same
+ * sign-offs as processing every commit in turn. Its metadata, such as the classified flag, describes the branch head.
+ * <p>
+ * When the pool is full and runs a commit on the calling thread, only that commit is processed there. A commit arriving for
+ * the branch meanwhile is handed to the pool; if the pool is still full, it is processed by the next pool thread to finish
+ * its own lane, or with the next commit for the branch.
+ */
+@Component
+public class CommitProcessingLanes {
+
+	private final AcceptanceService acceptanceService;
+	private final CommitProcessingExecutor commitProcessingExecutor;
+	private final Map<String, Lane> lanes = new HashMap<>();
+	private final AtomicLong coalescedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CommitProcessingLanes.class);
+
+	public CommitProcessingLanes(AcceptanceService acceptanceService, CommitProcessingExecutor commitProcessingExecutor) {
+		this.acceptanceService = acceptanceService;
+		this.commitProcessingExecutor = commitProcessingExecutor;
+	}
+
+	/**
+	 * Queue the given commit in the lane of the branch receiving the changes, replacing any older commit waiting there.
+	 *
+	 * @param commitInformation Commit to process.
+	 * @throws RejectedExecutionException When the pool is full and the rejection policy is REJECT.
+	 */
+	public void submit(CommitInformation commitInformation) {
+		final String branchPath = commitInformation.getBranchPathReceivingChanges();
+		final PendingCommit pendingCommit = new PendingCommit(commitInformation, SecurityContextHolder.getContext());
+		final boolean newLane;
+		synchronized (lanes) {
+			final Lane lane = lanes.get(branchPath);
+			if (lane != null) {
+				if (lane.pendingCommit != null) {
+					coalescedCount.incrementAndGet();
+					LOGGER.info("Coalescing commit {} with commit {} waiting for branch {}.", commitInformation, lane.pendingCommit.commitInformation(), branchPath);
+					lane.pendingCommit = newest(lane.pendingCommit, pendingCommit);
+				} else {
+					lane.pendingCommit = pendingCommit;
+				}
+				if (lane.scheduled) {
+					return;
+				}
+				// Left unscheduled while the pool was full, see schedule
+				lane.scheduled = true;
+				newLane = false;
+			} else {
+				final Lane createdLane = new Lane();
+				createdLane.pendingCommit = pendingCommit;
+				createdLane.scheduled = true;
+				lanes.put(branchPath, createdLane);
+				newLane = true;
+			}
+		}
+
+		try {
+			schedule(branchPath, true);
+		} catch (RejectedExecutionException e) {
+			synchronized (lanes) {
+				if (newLane) {
+					lanes.remove(branchPath);
+				} else {
+					lanes.get(branchPath).scheduled = false;
+				}
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Return statistics of the lanes, together with those of the pool.
+	 *
+	 * @return Statistics of the lanes and pool.
+	 */
+	public Map<String, Object> getStats() {
+		final Map<String, Object> result = new LinkedHashMap<>(commitProcessingExecutor.getStats());
+		synchronized (lanes) {
+			result.put("activeLanes", lanes.size());
+			result.put("waitingCommits", lanes.values().stream().filter(lane -> lane.pendingCommit != null).count());
+			result.put("unscheduledLanes", lanes.values().stream().filter(lane -> !lane.scheduled).count());
+		}
+		result.put("coalescedCount", coalescedCount.get());
+		result.put("failedCommitCount", failedCount.get());
+		return result;
+	}
+
+	private void drain(String branchPath) {
+		while (processNext(branchPath)) {
+			// Until no commit is waiting
+		}
+	}
+
+	// Run the lane on the pool. When the pool is full and the task runs on the calling thread instead, either a single commit
+	// is processed there or the lane is left unscheduled, so that a busy branch cannot hold the caller.
+	private void schedule(String branchPath, boolean processOnCaller) {
+		final Thread caller = Thread.currentThread();
+		commitProcessingExecutor.submit(() -> {
+			if (Thread.currentThread() != caller) {
+				drain(branchPath);
+				drainUnscheduled();
+			} else if (processOnCaller) {
+				processOnCaller(branchPath);
+			} else {
+				// Picked up by the next pool thread to finish its lane, or by the next commit for the branch
+				synchronized (lanes) {
+					lanes.get(branchPath).scheduled = false;
+				}
+			}
+		});
+	}
+
+	private void processOnCaller(String branchPath) {
+		processNext(branchPath);
+		synchronized (lanes) {
+			if (lanes.get(branchPath).pendingCommit == null) {
+				lanes.remove(branchPath);
+				return;
+			}
+		}
+
+		// Commits arrived meanwhile, hand them to the pool
+		schedule(branchPath, false);
+	}
+
+	private void drainUnscheduled() {
+		String branchPath;
+		while ((branchPath = claimUnscheduled()) != null) {
+			drain(branchPath);
+		}
+	}
+
+	private String claimUnscheduled() {
+		synchronized (lanes) {
+			for (Map.Entry<String, Lane> entry : lanes.entrySet()) {
+				if (!entry.getValue().scheduled) {
+					entry.getValue().scheduled = true;
+					return entry.getKey();
+				}
+			}
+		}
+
+		return null;
+	}
+
+	// Process the commit waiting in the lane, or remove the lane when none is waiting. Return whether a commit was processed.
+	private boolean processNext(String branchPath) {
+		final PendingCommit pendingCommit;
+		synchronized (lanes) {
+			final Lane lane = lanes.get(branchPath);
+			pendingCommit = lane.pendingCommit;
+			if (pendingCommit == null) {
+				lanes.remove(branchPath);
+				return false;
+			}
+			lane.pendingCommit = null;
+		}
+
+		process(pendingCommit);
+		return true;
+	}
+
+	private void process(PendingCommit pendingCommit) {
+		final CommitInformation commitInformation = pendingCommit.commitInformation();
+		try {
+			// Each commit runs with the security context of the request that sent it
+			new DelegatingSecurityContextRunnable(() -> BranchRequestScope.run(() -> acceptanceService.processCommit(commitInformation)),
+					pendingCommit.securityContext()).run();
+		} catch (RuntimeException e) {
+			// Later commits in the lane are still processed
+			failedCount.incrementAndGet();
+			LOGGER.error("Failed to process commit {}.", commitInformation, e);
+		}
+	}
+
+	private static PendingCommit newest(PendingCommit waiting, PendingCommit arriving) {
+		return arriving.commitInformation().getHeadTime() >= waiting.commitInformation().getHeadTime() ? arriving : waiting;
+	}
+
+	private static final class Lane {
+		private PendingCommit pendingCommit;
+		// Whether a task is processing the lane or about to
+		private boolean scheduled;
+	}
+
+	private record PendingCommit(CommitInformation commitInformation, SecurityContext securityContext) {
+	}
+}
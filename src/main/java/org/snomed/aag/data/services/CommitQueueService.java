@@ -0,0 +1,122 @@
+package org.snomed.aag.data.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.jms.JMSException;
+import jakarta.jms.TextMessage;
+import org.ihtsdo.sso.integration.SecurityUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.aag.data.pojo.CommitInformation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.jms.annotation.JmsListener;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+/**
+ * Publishes commits to a JMS queue, so that they survive a restart and can be processed by any gateway instance.
+ * <p>
+ * Each message is grouped by the branch receiving the changes using JMSXGroupID; the broker delivers a group to one
+ * consumer at a time, keeping commits for a branch in order across instances. A commit that fails to process is rolled back
+ * onto the queue and redelivered by the broker.
+ * <p>
+ * Messages carry the name of the user that sent the commit, but never their credentials or roles: anything on the broker
+ * can be read or written by any client of the queue, and the user's token would expire before a delayed redelivery.
+ * Commits are instead processed with the token of a service account, aag.commit-queue.service-token, which is required
+ * when the queue is enabled. The roles of the service account are not those of the user, so items requiring a role are not
+ * automatically accepted for queued commits; the user can still accept those items themselves.
+ */
+@Service
+public class CommitQueueService {
+
+	static final String GROUP_ID_PROPERTY = "JMSXGroupID";
+	static final String USERNAME_PROPERTY = "aagUsername";
+
+	private final JmsTemplate jmsTemplate;
+	private final AcceptanceService acceptanceService;
+	private final boolean enabled;
+	private final String queueName;
+	private final String serviceToken;
+	private final ObjectMapper objectMapper;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(CommitQueueService.class);
+
+	public CommitQueueService(JmsTemplate jmsTemplate, AcceptanceService acceptanceService,
+							  @Value("${aag.commit-queue.enabled}") boolean enabled,
+							  @Value("${aag.commit-queue.name}") String queueName,
+							  @Value("${aag.commit-queue.service-token}") String serviceToken) {
+		if (enabled && !StringUtils.hasText(serviceToken)) {
+			// Without a token every queued commit would fail to read its branch from Snowstorm and be dead-lettered
+			throw new IllegalStateException("aag.commit-queue.service-token must be set when aag.commit-queue.enabled is true.");
+		}
+
+		this.jmsTemplate = jmsTemplate;
+		this.acceptanceService = acceptanceService;
+		this.enabled = enabled;
+		this.queueName = queueName;
+		this.serviceToken = serviceToken;
+		this.objectMapper = Jackson2ObjectMapperBuilder.json().failOnUnknownProperties(false).build();
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Publish the given commit for processing, on behalf of the current user.
+	 *
+	 * @param commitInformation Commit to process.
+	 * @throws org.springframework.jms.JmsException When the commit cannot be sent to the broker.
+	 */
+	public void publish(CommitInformation commitInformation) {
+		final String body;
+		try {
+			body = objectMapper.writeValueAsString(commitInformation);
+		} catch (JsonProcessingException e) {
+			throw new IllegalArgumentException("Failed to serialise commit information.", e);
+		}
+
+		final String username = SecurityUtil.getUsername();
+		jmsTemplate.send(queueName, session -> {
+			final TextMessage message = session.createTextMessage(body);
+			message.setStringProperty(GROUP_ID_PROPERTY, commitInformation.getBranchPathReceivingChanges());
+			setPropertyIfPresent(message, USERNAME_PROPERTY, username);
+			return message;
+		});
+	}
+
+	@JmsListener(destination = "${aag.commit-queue.name}", containerFactory = "commitQueueListenerContainerFactory")
+	void consume(TextMessage message) throws JMSException {
+		final CommitInformation commitInformation;
+		try {
+			commitInformation = objectMapper.readValue(message.getText(), CommitInformation.class);
+		} catch (JsonProcessingException e) {
+			// Redelivery would fail the same way
+			LOGGER.error("Failed to parse commit message {}.", message, e);
+			return;
+		}
+
+		// The username is only used for attribution; no credentials or authorities are taken from the message
+		final SecurityContext securityContext = SecurityContextHolder.createEmptyContext();
+		securityContext.setAuthentication(new PreAuthenticatedAuthenticationToken(message.getStringProperty(USERNAME_PROPERTY), serviceToken, AuthorityUtils.NO_AUTHORITIES));
+		SecurityContextHolder.setContext(securityContext);
+		try {
+			LOGGER.info("Processing queued commit {}{}.", commitInformation, message.getJMSRedelivered() ? ", redelivered" : "");
+			BranchRequestScope.run(() -> acceptanceService.processCommit(commitInformation, false));
+		} finally {
+			SecurityContextHolder.clearContext();
+		}
+	}
+
+	private static void setPropertyIfPresent(TextMessage message, String name, String value) throws JMSException {
+		if (value != null) {
+			message.setStringProperty(name, value);
+		}
+	}
+}
@@ -137,6 +137,27 @@ public class CriteriaItemService {
 		return repository.findAllByIdIn(criteriaItemIdentifiers);
 	}
 
+	/**
+	 * Find entries in database with matching identifiers, using a single query.
+	 *
+	 * @param criteriaItemIdentifiers Identifiers to match in query.
+	 * @return Entries in database with matching identifiers.
+	 * @throws IllegalArgumentException If argument is invalid.
+	 * @throws NotFoundException        If any identifier has no matching entry.
+	 */
+	public Set<CriteriaItem> findAllByIdentifiersOrThrow(Collection<String> criteriaItemIdentifiers) {
+		final Set<CriteriaItem> criteriaItems = findAllByIdentifiers(criteriaItemIdentifiers);
+		if (criteriaItems.size() < criteriaItemIdentifiers.size()) {
+			final Set<String> found = criteriaItems.stream().map(CriteriaItem::getId).collect(Collectors.toSet());
+			for (String id : criteriaItemIdentifiers) {
+				if (!found.contains(id)) {
+					throw new NotFoundException(format("Criteria Item with id '%s' not found.", id));
+				}
+			}
+		}
+		return criteriaItems;
+	}
+
 	/**
 	 * Find entries in database with matching mandatory and authoringLevel fields.
 	 *
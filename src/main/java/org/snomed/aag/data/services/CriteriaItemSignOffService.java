@@ -1,5 +1,7 @@
 package org.snomed.aag.data.services;
 
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import com.google.common.collect.Lists;
 import org.ihtsdo.sso.integration.SecurityUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,16 +11,29 @@ import org.snomed.aag.data.domain.CriteriaItemSignOffFactory;
 import org.snomed.aag.data.domain.ProjectAcceptanceCriteria;
 import org.snomed.aag.data.repositories.CriteriaItemSignOffRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.RefreshPolicy;
+import org.springframework.data.elasticsearch.BulkFailureException;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.bool;
+import static org.snomed.aag.data.Constants.LARGE_PAGE;
+import static org.snomed.aag.data.helper.QueryHelper.termQuery;
+import static org.snomed.aag.data.helper.QueryHelper.termsQuery;
+
 @Service
 public class CriteriaItemSignOffService {
     private static final String INVALID_PARAMETERS = "Invalid parameters.";
+	private static final int REKEY_BATCH_SIZE = 1_000;
 
     @Autowired
     private CriteriaItemSignOffRepository repository;
@@ -26,6 +41,18 @@ public class CriteriaItemSignOffService {
 	@Autowired
 	private CriteriaItemSignOffFactory criteriaItemSignOffFactory;
 
+	@Autowired
+	private AcceptanceStatusService acceptanceStatusService;
+
+	@Autowired
+	private ElasticsearchTemplate elasticsearchTemplate;
+
+	@Value("${aag.refresh-policy.sign-off-interactive}")
+	private RefreshPolicy interactiveRefreshPolicy;
+
+	@Value("${aag.refresh-policy.sign-off-background}")
+	private RefreshPolicy backgroundRefreshPolicy;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	private static void verifyParams(String criteriaItemId, String branchPath, Integer projectIteration, ProjectAcceptanceCriteria projectAcceptanceCriteria) {
@@ -47,43 +74,43 @@ public class CriteriaItemSignOffService {
 	}
 
 	/**
-	 * Save entries in store. For each entry, only save if a corresponding entry is not already present.
+	 * Save entries in store. For each entry, only save if a corresponding entry is not already present. Entries are written
+	 * with a single bulk request which only creates documents; entries already present are then fetched by identifier.
 	 *
 	 * @param criteriaItems             Entries to save in store.
 	 * @param branchPath                Value to set corresponding field for all entries given.
 	 * @param branchHeadTimestamp       Value to set corresponding field for all entries given.
 	 * @param projectAcceptanceCriteria Required for finding existing CriteriaItemSignOff.
-	 * @return Saved entries in database, including entries previously saved but are still within scope.
+	 * @return Saved entries in database, including entries previously saved but are still within scope. Each entry has its
+	 * result set to whether it was created or already present.
 	 * @throws IllegalArgumentException If arguments are invalid.
 	 */
 	public Set<CriteriaItemSignOff> createAll(Set<CriteriaItem> criteriaItems, String branchPath, Integer projectIteration, Long branchHeadTimestamp, ProjectAcceptanceCriteria projectAcceptanceCriteria) {
 		verifyParams(criteriaItems, branchPath, projectIteration, branchHeadTimestamp, projectAcceptanceCriteria);
 
 		String username = SecurityUtil.getUsername();
-		List<CriteriaItemSignOff> toCreate = new ArrayList<>();
+		List<CriteriaItemSignOff> toCreate = criteriaItems.stream()
+				.map(criteriaItem -> criteriaItemSignOffFactory.create(criteriaItem.getId(), branchPath, branchHeadTimestamp, projectIteration, username, projectAcceptanceCriteria))
+				.toList();
+
+		logger.info("Creating item sign-offs {} for branch {}, iteration {}", toCreate.stream().map(CriteriaItemSignOff::getCriteriaItemId).toList(), branchPath, projectIteration);
+		Set<String> alreadyPresentIds = doCreateAll(toCreate, interactiveRefreshPolicy);
+
+		// Return all in scope as to not hide data.
 		Set<CriteriaItemSignOff> criteriaItemSignOffs = new HashSet<>();
-		for (CriteriaItem criteriaItem : criteriaItems) {
-			Optional<CriteriaItemSignOff> existingCriteriaItemSignOff = findByCriteriaItemIdAndBranchPathAndProjectIteration(
-					criteriaItem.getId(),
-					branchPath,
-					projectIteration,
-					projectAcceptanceCriteria
-			);
-
-			// Only create new entries, but return all in scope as to not hide data.
-			if (existingCriteriaItemSignOff.isEmpty()) {
-				toCreate.add(criteriaItemSignOffFactory.create(criteriaItem.getId(), branchPath, branchHeadTimestamp, projectIteration, username, projectAcceptanceCriteria));
-			} else {
-				criteriaItemSignOffs.add(existingCriteriaItemSignOff.get());
+		for (CriteriaItemSignOff criteriaItemSignOff : toCreate) {
+			if (!alreadyPresentIds.contains(criteriaItemSignOff.getId())) {
+				criteriaItemSignOff.setResult(CriteriaItemSignOff.Result.CREATED);
+				criteriaItemSignOffs.add(criteriaItemSignOff);
 			}
 		}
+		acceptanceStatusService.addSignOffs(branchPath, criteriaItemSignOffs);
 
-		Set<CriteriaItemSignOff> created = new HashSet<>();
-		for (CriteriaItemSignOff criteriaItemSignOff : repository.saveAll(toCreate)) {
-			created.add(criteriaItemSignOff);
+		for (CriteriaItemSignOff existing : repository.findAllById(alreadyPresentIds)) {
+			existing.setResult(CriteriaItemSignOff.Result.ALREADY_PRESENT);
+			criteriaItemSignOffs.add(existing);
 		}
 
-		criteriaItemSignOffs.addAll(created);
 		return criteriaItemSignOffs;
 	}
 
@@ -103,19 +130,19 @@ public class CriteriaItemSignOffService {
 		String criteriaItemId = criteriaItemSignOff.getCriteriaItemId();
 		Integer projectIteration = criteriaItemSignOff.getProjectIteration();
 
-		//Cannot have multiple CriteriaItemSignOff with same branch and project iteration
-		Optional<CriteriaItemSignOff> existingCriteriaItemSignOff = findByCriteriaItemIdAndBranchPathAndProjectIteration(criteriaItemId, branch, projectIteration, projectAcceptanceCriteria);
-		if (existingCriteriaItemSignOff.isPresent()) {
+		//Cannot have multiple CriteriaItemSignOff with same branch and project iteration; rejected by Elasticsearch as the identifier is taken
+		logger.info("Creating item sign-offs {} for branch {}, iteration {}", Collections.singleton(criteriaItemId), branch, projectIteration);
+		if (!doCreateAll(Collections.singletonList(criteriaItemSignOff), interactiveRefreshPolicy).isEmpty()) {
 			String message = String.format("Criteria Item %s has already been signed off for branch %s and project iteration %d", criteriaItemId, branch, projectIteration);
 			throw new ServiceRuntimeException(message, HttpStatus.CONFLICT);
 		}
 
-		logger.info("Creating item sign-offs {} for branch {}, iteration {}", Collections.singleton(criteriaItemId), branch, projectIteration);
-		return repository.save(criteriaItemSignOff);
+		acceptanceStatusService.addSignOffs(branch, Collections.singleton(criteriaItemSignOff));
+		return criteriaItemSignOff;
 	}
 
 	/**
-	 * Create CriteriaItemSignOff for all given CriteriaItem.
+	 * Create CriteriaItemSignOff for all given CriteriaItem, as part of background processing of commits and validation.
 	 *
 	 * @param itemsToAccept             Identifiers of CriteriaItems to mark as complete.
 	 * @param branchPath                Branch path of CriteriaItems to mark as complete.
@@ -130,7 +157,44 @@ public class CriteriaItemSignOffService {
 						.map(id -> criteriaItemSignOffFactory.create(id, branchPath, headTimestamp, projectIteration, SecurityUtil.getUsername(), projectAcceptanceCriteria))
 						.collect(Collectors.toSet());
 		logger.info("Creating item sign-offs {} for branch {}, iteration {}", itemsToAccept, branchPath, projectIteration);
-		repository.saveAll(items);
+		Set<String> alreadyPresentIds = doCreateAll(new ArrayList<>(items), backgroundRefreshPolicy);
+		acceptanceStatusService.addSignOffs(branchPath, items.stream().filter(item -> !alreadyPresentIds.contains(item.getId())).toList());
+	}
+
+	/**
+	 * Re-key entries created before identifiers were derived from criteriaItemId, branch and projectIteration. Each entry is
+	 * copied to its derived identifier and the original is deleted. When several entries share a derived identifier, the first
+	 * one copied is kept.
+	 *
+	 * @return Number of re-keyed entries.
+	 */
+	public long rekeyAll() {
+		final List<CriteriaItemSignOff> toRekey = new ArrayList<>();
+		try (SearchHitsIterator<CriteriaItemSignOff> stream = elasticsearchTemplate.searchForStream(
+				new NativeQueryBuilder().withQuery(q -> q.matchAll(m -> m)).withPageable(LARGE_PAGE).build(), CriteriaItemSignOff.class)) {
+			stream.forEachRemaining(hit -> {
+				CriteriaItemSignOff criteriaItemSignOff = hit.getContent();
+				if (!hit.getId().equals(CriteriaItemSignOff.toId(criteriaItemSignOff.getCriteriaItemId(), criteriaItemSignOff.getBranch(), criteriaItemSignOff.getProjectIteration()))) {
+					toRekey.add(criteriaItemSignOff);
+				}
+			});
+		}
+
+		long rekeyed = 0;
+		for (List<CriteriaItemSignOff> batch : Lists.partition(toRekey, REKEY_BATCH_SIZE)) {
+			List<String> originalIds = batch.stream().map(CriteriaItemSignOff::getId).toList();
+			for (CriteriaItemSignOff criteriaItemSignOff : batch) {
+				criteriaItemSignOff.setId(CriteriaItemSignOff.toId(criteriaItemSignOff.getCriteriaItemId(), criteriaItemSignOff.getBranch(), criteriaItemSignOff.getProjectIteration()));
+			}
+
+			// Duplicates are already present under the derived identifier and are dropped with the original
+			doCreateAll(batch, backgroundRefreshPolicy);
+			repository.deleteAllById(originalIds);
+			rekeyed += batch.size();
+		}
+
+		logger.info("Re-keyed {} item sign-offs.", rekeyed);
+		return rekeyed;
 	}
 
 	/**
@@ -150,25 +214,27 @@ public class CriteriaItemSignOffService {
 	}
 
     /**
-     * Find entries in database with matching branchPath, projectIteration and criteriaItemId fields. For each entry found,
-     * update the complete flag.
+     * Find signed off CriteriaItems for the given branchPath and projectIteration, using the materialized acceptance status
+     * of the branch. For each signed off CriteriaItem, update the complete flag.
      *
-     * @param branchPath       Field to match in query.
-     * @param criteriaItems    Field to match in query.
-     * @return Entries in database with matching branchPath, projectIteration, and criteriaItemId fields.
-     * @throws IllegalArgumentException If arguments are invalid.
+     * @param criteriaItems    CriteriaItems to update.
+     * @param branchPath       Branch path of sign-offs.
+     * @param projectIteration Project iteration of sign-offs.
+     * @return Identifiers of the given CriteriaItems which are signed off.
      */
-	public List<CriteriaItemSignOff> markSignedOffItems(Set<CriteriaItem> criteriaItems, String branchPath, Integer projectIteration, ProjectAcceptanceCriteria criteria) {
-		Map<String, CriteriaItem> criteriaItemMap = criteriaItems.stream().collect(Collectors.toMap(CriteriaItem::getId, Function.identity()));
-		List<CriteriaItemSignOff> criteriaItemSignOffs = doFindCriteriaItemSignOff(criteriaItemMap.keySet(), branchPath, projectIteration, criteria);
-		for (CriteriaItemSignOff criteriaItemSignOff : criteriaItemSignOffs) {
-			final CriteriaItem criteriaItem = criteriaItemMap.get(criteriaItemSignOff.getCriteriaItemId());
-			if (criteriaItem != null) {
+	public Set<String> markSignedOffItems(Set<CriteriaItem> criteriaItems, String branchPath, Integer projectIteration, ProjectAcceptanceCriteria criteria) {
+		// Task level sign-offs are matched regardless of project iteration
+		Integer signOffIteration = criteria.isBranchProjectLevel(branchPath) ? projectIteration : null;
+		Set<String> signedOffItemIds = acceptanceStatusService.findSignedOffItemIds(branchPath, signOffIteration);
+		Set<String> marked = new HashSet<>();
+		for (CriteriaItem criteriaItem : criteriaItems) {
+			if (signedOffItemIds.contains(criteriaItem.getId())) {
 				criteriaItem.setComplete(true);
+				marked.add(criteriaItem.getId());
 			}
         }
 
-        return criteriaItemSignOffs;
+        return marked;
     }
 
     /**
@@ -189,50 +255,116 @@ public class CriteriaItemSignOffService {
         }
 
         logger.info("Deleting item sign-offs {} for branch {}, iteration {}", Collections.singleton(criteriaItemId), branchPath, projectIteration);
-		doDeleteCriteriaItemSignOff(criteriaItemId, branchPath, projectIteration, projectAcceptanceCriteria);
+		try {
+			elasticsearchTemplate.withRefreshPolicy(interactiveRefreshPolicy)
+					.delete(getId(criteriaItemId, branchPath, projectIteration, projectAcceptanceCriteria), CriteriaItemSignOff.class);
+		} catch (RuntimeException e) {
+			throw markAcceptanceStatusStale(branchPath, e);
+		}
+		removeFromAcceptanceStatus(Collections.singleton(criteriaItemId), branchPath, projectIteration, projectAcceptanceCriteria);
 		return true;
     }
 
 	/**
-	 * Delete CriteriaItemSignOff for all given CriteriaItem.
+	 * Delete CriteriaItemSignOff for all given CriteriaItem, using a single delete by query.
 	 *
 	 * @param itemsToUnaccept           Identifiers of CriteriaItems to mark as incomplete.
 	 * @param branchPath                Branch path of CriteriaItems to mark as incomplete.
 	 * @param projectIteration          Project iteration of CriteriaItems to mark as incomplete.
 	 * @param projectAcceptanceCriteria Determine whether to mark Project Criteria or Task Criteria incomplete.
+	 * @param background                Whether called from background processing of commits rather than a user request.
+	 * @return Number of deleted entries.
 	 */
-	public void deleteFrom(Set<String> itemsToUnaccept, String branchPath, Integer projectIteration, ProjectAcceptanceCriteria projectAcceptanceCriteria) {
-		logger.info("Deleting item sign-offs {} for branch {}}", itemsToUnaccept, branchPath);
-		for (String itemId : itemsToUnaccept) {
-			doDeleteCriteriaItemSignOff(itemId, branchPath, projectIteration, projectAcceptanceCriteria);
+	public long deleteFrom(Set<String> itemsToUnaccept, String branchPath, Integer projectIteration, ProjectAcceptanceCriteria projectAcceptanceCriteria, boolean background) {
+		if (itemsToUnaccept.isEmpty()) {
+			return 0;
 		}
-	}
 
-	// Find differently for PROJECT & TASK CriteriaItemSignOff
-	private List<CriteriaItemSignOff> doFindCriteriaItemSignOff(Collection<String> criteriaItemIdentifiers, String branchPath, Integer projectIteration, ProjectAcceptanceCriteria projectAcceptanceCriteria) {
-		boolean branchProjectLevel = projectAcceptanceCriteria.isBranchProjectLevel(branchPath);
-		if (branchProjectLevel) {
-			return repository.findAllByBranchAndProjectIterationAndCriteriaItemIdIn(branchPath, projectIteration, criteriaItemIdentifiers);
+		logger.info("Deleting item sign-offs {} for branch {}", itemsToUnaccept, branchPath);
+		Query query = getCriteriaItemSignOffsQuery(itemsToUnaccept, branchPath, projectIteration, projectAcceptanceCriteria);
+		final long deleted;
+		try {
+			deleted = elasticsearchTemplate.withRefreshPolicy(background ? backgroundRefreshPolicy : interactiveRefreshPolicy)
+					.delete(new NativeQueryBuilder().withQuery(query).build(), CriteriaItemSignOff.class)
+					.getDeleted();
+		} catch (RuntimeException e) {
+			throw markAcceptanceStatusStale(branchPath, e);
 		}
+		removeFromAcceptanceStatus(itemsToUnaccept, branchPath, projectIteration, projectAcceptanceCriteria);
+		logger.info("Deleted {} item sign-offs for branch {}", deleted, branchPath);
+		return deleted;
+	}
 
-		return repository.findAllByBranchAndCriteriaItemIdIn(branchPath, criteriaItemIdentifiers);
+	private void removeFromAcceptanceStatus(Set<String> criteriaItemIds, String branchPath, Integer projectIteration, ProjectAcceptanceCriteria projectAcceptanceCriteria) {
+		// Task level sign-offs are deleted regardless of project iteration
+		Integer signOffIteration = projectAcceptanceCriteria.isBranchProjectLevel(branchPath) ? projectIteration : null;
+		acceptanceStatusService.removeSignOffs(branchPath, criteriaItemIds, signOffIteration);
 	}
 
-	// Find differently for PROJECT & TASK CriteriaItemSignOff
-	private Optional<CriteriaItemSignOff> doFindCriteriaItemSignOff(String criteriaItemId, String branchPath, Integer projectIteration, ProjectAcceptanceCriteria projectAcceptanceCriteria) {
-		if (projectAcceptanceCriteria.isBranchProjectLevel(branchPath)) {
-			return repository.findByCriteriaItemIdAndBranchAndProjectIteration(criteriaItemId, branchPath, projectIteration);
+	// A failed delete may still have removed some sign-offs, which the status would otherwise keep reporting as signed off
+	private RuntimeException markAcceptanceStatusStale(String branchPath, RuntimeException e) {
+		try {
+			acceptanceStatusService.markStale(branchPath);
+		} catch (RuntimeException markStaleException) {
+			e.addSuppressed(markStaleException);
+		}
+		return e;
+	}
+
+		// Write entries with op_type create in a single bulk request. Return identifiers of entries which were already present.
+	private Set<String> doCreateAll(List<CriteriaItemSignOff> criteriaItemSignOffs, RefreshPolicy refreshPolicy) {
+		if (criteriaItemSignOffs.isEmpty()) {
+			return Collections.emptySet();
 		}
 
-		return repository.findByCriteriaItemIdAndBranch(criteriaItemId, branchPath);
+		List<IndexQuery> indexQueries = criteriaItemSignOffs.stream()
+				.map(criteriaItemSignOff -> new IndexQueryBuilder()
+						.withId(criteriaItemSignOff.getId())
+						.withObject(criteriaItemSignOff)
+						.withOpType(IndexQuery.OpType.CREATE)
+						.build())
+				.toList();
+
+		try {
+			elasticsearchTemplate.withRefreshPolicy(refreshPolicy).bulkIndex(indexQueries, CriteriaItemSignOff.class);
+			return Collections.emptySet();
+		} catch (BulkFailureException e) {
+			// Failed entries which exist were rejected as duplicates; anything else is a genuine failure
+			Set<String> failedIds = e.getFailedDocuments().keySet();
+			Set<String> alreadyPresentIds = new HashSet<>();
+			repository.findAllById(failedIds).forEach(existing -> alreadyPresentIds.add(existing.getId()));
+			if (alreadyPresentIds.size() != failedIds.size()) {
+				throw e;
+			}
+
+			return alreadyPresentIds;
+		}
 	}
 
-	// Delete differently for PROJECT & TASK CriteriaItemSignOff
-	private void doDeleteCriteriaItemSignOff(String criteriaItemId, String branchPath, Integer projectIteration, ProjectAcceptanceCriteria projectAcceptanceCriteria) {
+	// Query differently for PROJECT & TASK CriteriaItemSignOff; task level sign-offs match regardless of project iteration
+	private Query getCriteriaItemSignOffsQuery(Collection<String> criteriaItemIds, String branchPath, Integer projectIteration, ProjectAcceptanceCriteria projectAcceptanceCriteria) {
+		boolean branchProjectLevel = projectAcceptanceCriteria.isBranchProjectLevel(branchPath);
+		return bool(b -> {
+			b.must(termsQuery(CriteriaItemSignOff.Fields.CRITERIA_ITEM_ID, criteriaItemIds));
+			b.must(termQuery(CriteriaItemSignOff.Fields.BRANCH, branchPath));
+			if (branchProjectLevel) {
+				b.must(termQuery(CriteriaItemSignOff.Fields.PROJECT_ITERATION, projectIteration));
+			}
+			return b;
+		});
+	}
+
+	// Identify differently for PROJECT & TASK CriteriaItemSignOff
+	private String getId(String criteriaItemId, String branchPath, Integer projectIteration, ProjectAcceptanceCriteria projectAcceptanceCriteria) {
 		if (projectAcceptanceCriteria.isBranchProjectLevel(branchPath)) {
-			repository.deleteByCriteriaItemIdAndBranchAndProjectIteration(criteriaItemId, branchPath, projectIteration);
-		} else {
-			repository.deleteByCriteriaItemIdAndBranch(criteriaItemId, branchPath);
+			return CriteriaItemSignOff.toId(criteriaItemId, branchPath, projectIteration);
 		}
+
+		return CriteriaItemSignOff.toId(criteriaItemId, branchPath, null);
+	}
+
+	// Realtime GET, so an entry is found as soon as it has been written
+	private Optional<CriteriaItemSignOff> doFindCriteriaItemSignOff(String criteriaItemId, String branchPath, Integer projectIteration, ProjectAcceptanceCriteria projectAcceptanceCriteria) {
+		return repository.findById(getId(criteriaItemId, branchPath, projectIteration, projectAcceptanceCriteria));
 	}
 }
@@ -0,0 +1,254 @@
+package org.snomed.aag.data.services;
+
+import co.elastic.clients.elasticsearch._types.query_dsl.Query;
+import co.elastic.clients.elasticsearch._types.query_dsl.RangeQuery;
+import com.google.common.collect.Iterators;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.aag.data.pojo.MaintenanceTask;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilterBuilder;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.snomed.aag.data.helper.QueryHelper.rangeQuery;
+import static org.snomed.aag.data.helper.TaskHelper.awaitTask;
+
+/**
+ * Moves the documents of an entity to a versioned index created with the entity's current mapping, behind an alias named as
+ * the entity's index. Documents are copied while the entity stays writable, then changes made during the copy are caught up
+ * from the entity's modification time and tombstones, see {@link ChangeTracking}. Writes are only blocked for the last,
+ * short catch-up and the atomic switch of the alias; reads are served throughout.
+ */
+@Service
+public class IndexMigrationService {
+
+	private static final String VERSION_SEPARATOR = "_v";
+	private static final int DELETED_IDS_BATCH_SIZE = 1_000;
+
+	@Autowired
+	private ElasticsearchTemplate elasticsearchTemplate;
+
+	@Value("${elasticsearch.task.timeout}")
+	private Duration taskTimeout;
+
+	@Value("${aag.index-migration.catch-up-margin}")
+	private Duration catchUpMargin;
+
+	@Value("${aag.index-migration.catch-up-passes}")
+	private int catchUpPasses;
+
+	@Value("${aag.index-migration.blocked-catch-up-size}")
+	private long blockedCatchUpSize;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	/**
+	 * How changes to an entity are found, so that changes made while its documents are copied can be applied afterwards.
+	 *
+	 * @param modifiedField  Field of the entity holding the time of its last create or update in milliseconds.
+	 * @param tombstoneClass Entity recording deletions, with the identifier of the deleted document.
+	 * @param deletedField   Field of the tombstone holding the time of deletion in milliseconds.
+	 */
+	public record ChangeTracking(String modifiedField, Class<?> tombstoneClass, String deletedField) {
+	}
+
+	/**
+	 * Copy documents of the given entity into the index of the given mapping version, unless the alias already points to it.
+	 * The previous index, whether concrete or behind the alias, is deleted once the alias has been switched.
+	 * <p>
+	 * Changes are caught up in passes, each from shortly before the previous pass started, until a pass finds no more than
+	 * aag.index-migration.blocked-catch-up-size changes or aag.index-migration.catch-up-passes have run. Writes are then
+	 * blocked for a last pass and the switch, and fail meanwhile. Changes stamped with a time more than
+	 * aag.index-migration.catch-up-margin before they are written, such as by a bulk delete running on another instance,
+	 * may be missed.
+	 *
+	 * @param entityClass    Entity to migrate.
+	 * @param mappingVersion Version of the entity's current mapping.
+	 * @param changeTracking How changes to the entity are found.
+	 * @param task           Task running the migration, on which each Elasticsearch task is recorded.
+	 * @return Name of the index behind the alias.
+	 * @throws IllegalStateException When copying fails, or the index does not hold the same number of documents afterwards.
+	 */
+	public String migrate(Class<?> entityClass, int mappingVersion, ChangeTracking changeTracking, MaintenanceTask task) {
+		final String alias = elasticsearchTemplate.getIndexCoordinatesFor(entityClass).getIndexName();
+		final String target = alias + VERSION_SEPARATOR + mappingVersion;
+		final Set<String> aliasedIndices = getAliasedIndices(alias);
+		if (aliasedIndices.contains(target)) {
+			logger.info("Index {} is already at mapping version {}.", alias, mappingVersion);
+			return target;
+		}
+		if (aliasedIndices.size() > 1) {
+			throw new IllegalStateException(String.format("Alias %s points to more than one index %s.", alias, aliasedIndices));
+		}
+
+		// A concrete index has the alias name and is removed in the same request that adds the alias
+		final boolean concrete = aliasedIndices.isEmpty();
+		final String source = concrete ? alias : aliasedIndices.iterator().next();
+
+		final IndexOperations entityIndexOps = elasticsearchTemplate.indexOps(entityClass);
+		final IndexOperations targetIndexOps = elasticsearchTemplate.indexOps(IndexCoordinates.of(target));
+		if (targetIndexOps.exists()) {
+			logger.warn("Deleting index {} left behind by an incomplete migration.", target);
+			targetIndexOps.delete();
+		}
+		targetIndexOps.create(entityIndexOps.createSettings(), entityIndexOps.createMapping());
+
+		boolean blocked = false;
+		try {
+			long since = System.currentTimeMillis();
+			copy(source, target, null, task);
+			for (int pass = 1; ; pass++) {
+				final long passStart = System.currentTimeMillis();
+				final long changes = catchUp(entityClass, source, target, changeTracking, since, task);
+				logger.info("Caught up {} changes to index {} in pass {}.", changes, source, pass);
+				since = passStart;
+				if (changes <= blockedCatchUpSize || pass >= catchUpPasses) {
+					break;
+				}
+			}
+
+			setWriteBlock(source, true);
+			blocked = true;
+			catchUp(entityClass, source, target, changeTracking, since, task);
+			verifyCount(entityClass, source, target);
+			switchAlias(alias, source, target, concrete);
+		} catch (RuntimeException e) {
+			logger.error("Failed to migrate index {} to {}.", source, target, e);
+			if (blocked) {
+				setWriteBlock(source, false);
+			}
+			targetIndexOps.delete();
+			throw e;
+		}
+
+		if (!concrete) {
+			elasticsearchTemplate.indexOps(IndexCoordinates.of(source)).delete();
+		}
+
+		logger.info("Migrated index {} to {}.", source, target);
+		return target;
+	}
+
+	/**
+	 * Apply changes made to the source since the given time to the target: documents created or updated since are copied
+	 * again, and documents deleted since, according to their tombstones, are deleted unless they exist again.
+	 *
+	 * @return Number of documents copied or deleted.
+	 */
+	long catchUp(Class<?> entityClass, String source, String target, ChangeTracking changeTracking, long since, MaintenanceTask task) {
+		final long from = since - catchUpMargin.toMillis();
+		// Writes made without refresh are not visible to the copy until refreshed
+		elasticsearchTemplate.indexOps(IndexCoordinates.of(source)).refresh();
+		elasticsearchTemplate.indexOps(changeTracking.tombstoneClass()).refresh();
+		final long copied = copy(source, target, rangeQuery(changeTracking.modifiedField(), from, RangeQuery.Builder::gte), task);
+
+		final long deleted = catchUpDeletions(entityClass, source, target, changeTracking.tombstoneClass(), changeTracking.deletedField(), from);
+		elasticsearchTemplate.indexOps(IndexCoordinates.of(target)).refresh();
+
+		return copied + deleted;
+	}
+
+	private <T> long catchUpDeletions(Class<?> entityClass, String source, String target, Class<T> tombstoneClass, String deletedField, long from) {
+		long deleted = 0;
+		final NativeQuery tombstoneQuery = NativeQuery.builder()
+				.withQuery(rangeQuery(deletedField, from, RangeQuery.Builder::gte))
+				.withSourceFilter(new FetchSourceFilterBuilder().withExcludes("*").build())
+				.build();
+		try (SearchHitsIterator<T> tombstones = elasticsearchTemplate.searchForStream(tombstoneQuery, tombstoneClass)) {
+			final Iterator<List<SearchHit<T>>> batches = Iterators.partition(tombstones, DELETED_IDS_BATCH_SIZE);
+			while (batches.hasNext()) {
+				deleted += deleteRemoved(entityClass, source, target, batches.next().stream().map(SearchHit::getId).toList());
+			}
+		}
+
+		return deleted;
+	}
+
+	// Deletes from the target those of the given documents that no longer exist in the source
+	private long deleteRemoved(Class<?> entityClass, String source, String target, List<String> ids) {
+		final NativeQuery idsQuery = NativeQuery.builder()
+				.withQuery(q -> q.ids(i -> i.values(ids)))
+				.withSourceFilter(new FetchSourceFilterBuilder().withExcludes("*").build())
+				.withPageable(PageRequest.of(0, ids.size()))
+				.build();
+		final Set<String> existing = new HashSet<>();
+		elasticsearchTemplate.search(idsQuery, entityClass, IndexCoordinates.of(source)).forEach(hit -> existing.add(hit.getId()));
+		final List<String> removed = new ArrayList<>(ids);
+		removed.removeAll(existing);
+		if (removed.isEmpty()) {
+			return 0;
+		}
+
+		elasticsearchTemplate.delete(NativeQuery.builder().withQuery(q -> q.ids(i -> i.values(removed))).build(), entityClass, IndexCoordinates.of(target));
+		return removed.size();
+	}
+
+	private Set<String> getAliasedIndices(String alias) {
+		final boolean exists = elasticsearchTemplate.execute(client -> client.indices().existsAlias(e -> e.name(alias)).value());
+		if (!exists) {
+			return Set.of();
+		}
+
+		return elasticsearchTemplate.execute(client -> client.indices().getAlias(g -> g.name(alias)).result().keySet());
+	}
+
+	private void setWriteBlock(String index, boolean blocked) {
+		elasticsearchTemplate.execute(client -> client.indices().putSettings(p -> p
+				.index(index)
+				.settings(s -> s.blocks(b -> b.write(blocked)))));
+	}
+
+	// Copies the documents matching the query, or all documents, overwriting those already in the target
+	private long copy(String source, String target, Query query, MaintenanceTask task) {
+		final String taskId = elasticsearchTemplate.execute(client -> client.reindex(r -> r
+				.source(s -> {
+					s.index(source);
+					if (query != null) {
+						s.query(query);
+					}
+					return s;
+				})
+				.dest(d -> d.index(target))
+				.refresh(true)
+				.waitForCompletion(false))).task();
+		task.setElasticsearchTaskId(taskId);
+		final var status = awaitTask(elasticsearchTemplate, taskId, taskTimeout).response();
+		return status != null ? status.total() : 0;
+	}
+
+	private void verifyCount(Class<?> entityClass, String source, String target) {
+		final NativeQuery all = NativeQuery.builder().withQuery(q -> q.matchAll(m -> m)).build();
+		final long sourceCount = elasticsearchTemplate.count(all, entityClass, IndexCoordinates.of(source));
+		final long targetCount = elasticsearchTemplate.count(all, entityClass, IndexCoordinates.of(target));
+		if (sourceCount != targetCount) {
+			throw new IllegalStateException(String.format("Copied %s of %s documents from %s to %s.", targetCount, sourceCount, source, target));
+		}
+	}
+
+	private void switchAlias(String alias, String source, String target, boolean concrete) {
+		elasticsearchTemplate.execute(client -> client.indices().updateAliases(u -> {
+			u.actions(a -> a.add(add -> add.index(target).alias(alias)));
+			if (concrete) {
+				u.actions(a -> a.removeIndex(remove -> remove.index(source)));
+			} else {
+				u.actions(a -> a.remove(remove -> remove.index(source).alias(alias)));
+			}
+			return u;
+		}));
+	}
+}
@@ -0,0 +1,121 @@
+package org.snomed.aag.data.services;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.concurrent.DelegatingSecurityContextRunnable;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded pool for background work started by an HTTP request, so that the work does not hold up the response.
+ * <p>
+ * Once all threads are busy and the queue is full, the {@link RejectionPolicy} decides what happens to a new task:
+ * CALLER_RUNS runs it on the calling thread, pushing back on the caller, and REJECT refuses it. Tasks run with the
+ * security context of the caller. Failures are logged and counted rather than lost with the task's Future.
+ */
+public abstract class InstrumentedExecutor {
+
+	public enum RejectionPolicy {
+		CALLER_RUNS, REJECT
+	}
+
+	private static final long SHUTDOWN_WAIT_SECONDS = 30;
+
+	private final String name;
+	private final ThreadPoolExecutor executor;
+	private final AtomicLong submittedCount = new AtomicLong();
+	private final AtomicLong completedCount = new AtomicLong();
+	private final AtomicLong failedCount = new AtomicLong();
+	private final AtomicLong rejectedCount = new AtomicLong();
+	private final AtomicLong callerRunsCount = new AtomicLong();
+	private final AtomicLong totalLatencyMillis = new AtomicLong();
+	private final AtomicLong maxLatencyMillis = new AtomicLong();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	protected InstrumentedExecutor(String name, int poolSize, int queueCapacity, RejectionPolicy rejectionPolicy) {
+		this.name = name;
+		final AtomicInteger threadNumber = new AtomicInteger();
+		executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity),
+				runnable -> new Thread(runnable, name + "-" + threadNumber.incrementAndGet()),
+				rejectionPolicy == RejectionPolicy.CALLER_RUNS ? this::runOnCaller : this::reject);
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Run the given task on the pool, with the security context of the calling thread.
+	 *
+	 * @param task Task to run.
+	 * @throws RejectedExecutionException When the pool is full and the rejection policy is REJECT.
+	 */
+	public void submit(Runnable task) {
+		final long submittedAt = System.nanoTime();
+		submittedCount.incrementAndGet();
+		executor.execute(new DelegatingSecurityContextRunnable(() -> run(task, submittedAt), SecurityContextHolder.getContext()));
+	}
+
+	/**
+	 * Return statistics of the pool. Latency is measured from submission to completion, so includes time spent queued.
+	 *
+	 * @return Statistics of the pool.
+	 */
+	public Map<String, Object> getStats() {
+		final long finished = completedCount.get() + failedCount.get();
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("poolSize", executor.getPoolSize());
+		result.put("activeThreads", executor.getActiveCount());
+		result.put("queueDepth", executor.getQueue().size());
+		result.put("queueRemainingCapacity", executor.getQueue().remainingCapacity());
+		result.put("submittedCount", submittedCount.get());
+		result.put("completedCount", completedCount.get());
+		result.put("failedCount", failedCount.get());
+		result.put("rejectedCount", rejectedCount.get());
+		result.put("callerRunsCount", callerRunsCount.get());
+		result.put("averageLatencyMillis", finished == 0 ? 0 : totalLatencyMillis.get() / finished);
+		result.put("maxLatencyMillis", maxLatencyMillis.get());
+		return result;
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		executor.shutdown();
+		if (!executor.awaitTermination(SHUTDOWN_WAIT_SECONDS, TimeUnit.SECONDS)) {
+			logger.warn("{} queued {} tasks were not run before shutdown.", executor.shutdownNow().size(), name);
+		}
+	}
+
+	private void run(Runnable task, long submittedAt) {
+		try {
+			task.run();
+			completedCount.incrementAndGet();
+		} catch (RuntimeException e) {
+			failedCount.incrementAndGet();
+			logger.error("Failed to run {} task.", name, e);
+		} finally {
+			final long latencyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submittedAt);
+			totalLatencyMillis.addAndGet(latencyMillis);
+			maxLatencyMillis.accumulateAndGet(latencyMillis, Math::max);
+		}
+	}
+
+	private void runOnCaller(Runnable runnable, ThreadPoolExecutor executor) {
+		if (executor.isShutdown()) {
+			reject(runnable, executor);
+		}
+
+		callerRunsCount.incrementAndGet();
+		logger.warn("The {} pool is full, running task on the calling thread.", name);
+		runnable.run();
+	}
+
+	private void reject(Runnable runnable, ThreadPoolExecutor executor) {
+		rejectedCount.incrementAndGet();
+		throw new RejectedExecutionException("The " + name + " pool is full.");
+	}
+}
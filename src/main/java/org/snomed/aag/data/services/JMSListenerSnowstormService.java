@@ -3,10 +3,11 @@ package org.snomed.aag.data.services;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.collect.Iterators;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonWriter;
 import net.rcarz.jiraclient.Field;
 import net.rcarz.jiraclient.Issue;
 import net.rcarz.jiraclient.JiraClient;
@@ -14,7 +15,6 @@ import net.rcarz.jiraclient.JiraException;
 import org.ihtsdo.otf.rest.exception.BusinessServiceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.snomed.aag.data.Constants;
 import org.snomed.aag.data.domain.WhitelistItem;
 import org.snomed.aag.data.jira.ImpersonatingJiraClientFactory;
 import org.snomed.aag.data.jira.JiraConfigMapping;
@@ -29,8 +29,11 @@ import jakarta.jms.TextMessage;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Component
 public class JMSListenerSnowstormService {
@@ -38,6 +41,8 @@ public class JMSListenerSnowstormService {
 	private static final Logger LOGGER = LoggerFactory.getLogger(JMSListenerSnowstormService.class);
 	private static final int FULL_COMPONENT_MAX_LENGTH = 1000;
 	public static final int JIRA_SUMMARY_MAX_LENGTH = 255;
+	private static final int FIRST_N_INSTANCES = 10;
+	private static final int DELETE_BATCH_SIZE = 1_000;
 
 	@Value("${snowstorm.url}")
 	private String snowstormUrl;
@@ -89,20 +94,19 @@ public class JMSListenerSnowstormService {
 			final String codeSystemShortname = (String) message.get("codeSystemShortName");
 			final String codeSystemBranchPath = (String) message.get("codeSystemBranchPath");
 			final String effectiveDate = (String) message.get("effectiveDate");
-			List<WhitelistItem> whitelistItems = whitelistService.findAllByBranchAndMinimumCreationDate(codeSystemBranchPath, null, WhitelistItem.WhitelistItemType.TEMPORARY, true, Constants.LARGE_PAGE);
-			Map<String, List<WhitelistItem>> assertionToWhitelistItemsMap = whitelistItems.stream().collect(
-					Collectors.groupingBy(WhitelistItem::getValidationRuleId, Collectors.toCollection(ArrayList::new))
-			);
-			for (Map.Entry<String, List<WhitelistItem>> entry : assertionToWhitelistItemsMap.entrySet()) {
+			// Only a summary of each assertion is held in memory, entries are streamed again to attach and delete them
+			final Map<String, AssertionFailures> assertionFailuresMap = new LinkedHashMap<>();
+			try (Stream<WhitelistItem> whitelistItems = whitelistService.streamAllByBranchAndMinimumCreationDate(codeSystemBranchPath, null, WhitelistItem.WhitelistItemType.TEMPORARY, true)) {
+				whitelistItems.forEach(item -> assertionFailuresMap.computeIfAbsent(item.getValidationRuleId(), k -> new AssertionFailures()).add(item));
+			}
+			for (Map.Entry<String, AssertionFailures> entry : assertionFailuresMap.entrySet()) {
 				Issue newIssue = createJiraIssue(codeSystemShortname, generateSummary(entry, codeSystemShortname, effectiveDate), generateDescription(entry), effectiveDate);
 				LOGGER.info("New {} ticket has been created.", newIssue.getKey());
 
 				// Add attachment and update JIRA custom fields
-				Issue.NewAttachment[] attachments = new Issue.NewAttachment[1];
-				attachments[0] = new Issue.NewAttachment(entry.getKey() + ".json", getPrettyString(generateAttachment(entry)).getBytes());
-				newIssue.addAttachments(attachments);
+				addAttachment(newIssue, codeSystemBranchPath, entry);
 
-				whitelistService.deleteAll(entry.getValue());
+				deleteTemporaryItems(codeSystemBranchPath, entry.getKey());
 			}
 		} catch (IOException e) {
 			LOGGER.error("Failed to parse message. Message: {}.", textMessage);
@@ -111,14 +115,14 @@ public class JMSListenerSnowstormService {
         }
     }
 
-	private String generateSummary(Map.Entry<String, List<WhitelistItem>> entry, String codeSystemShortname, String effectiveDate) {
+	private String generateSummary(Map.Entry<String, AssertionFailures> entry, String codeSystemShortname, String effectiveDate) {
 		String date = getDateAsString(effectiveDate);
 		String product = null;
 		if (!CollectionUtils.isEmpty(jiraConfigMapping.getSnomedCtProducts()) &&
 				jiraConfigMapping.getSnomedCtProducts().containsKey(codeSystemShortname)) {
 			product = jiraConfigMapping.getSnomedCtProducts().get(codeSystemShortname);
 		}
-		WhitelistItem firstItem = entry.getValue().get(0);
+		WhitelistItem firstItem = entry.getValue().getFirstItem();
 		String summary = product + ", " + date + ", " + entry.getKey() + ", " + firstItem.getAssertionFailureText();
 		if (summary.length() > JIRA_SUMMARY_MAX_LENGTH) {
 			summary = summary.substring(0, JIRA_SUMMARY_MAX_LENGTH - 1);
@@ -131,12 +135,12 @@ public class JMSListenerSnowstormService {
 		return effectiveDate.substring(0, 4) + "-" + effectiveDate.substring(4,6) + "-" + effectiveDate.substring(6,8);
 	}
 
-	private String generateDescription(Map.Entry<String, List<WhitelistItem>> entry) {
-		WhitelistItem firstItem = entry.getValue().get(0);
+	private String generateDescription(Map.Entry<String, AssertionFailures> entry) {
+		WhitelistItem firstItem = entry.getValue().getFirstItem();
 		StringBuilder result = new StringBuilder(firstItem.getAssertionFailureText() + "\n"
-				+ "Total number of failures: " + entry.getValue().size() + "\n");
+				+ "Total number of failures: " + entry.getValue().getCount() + "\n");
 		result.append("Environment: ").append(getEnvironment()).append("\n");
-		List<WhitelistItem> firstNInstances = getFirstNInstances(entry.getValue(), 10);
+		List<WhitelistItem> firstNInstances = entry.getValue().getFirstNInstances();
 		if (!firstNInstances.isEmpty()) {
 			result.append("First ").append(firstNInstances.size()).append(" failures: \n");
 			for (WhitelistItem whitelistItem: firstNInstances) {
@@ -146,32 +150,40 @@ public class JMSListenerSnowstormService {
 		return result.toString();
 	}
 
-	private String generateAttachment(Map.Entry<String, List<WhitelistItem>> entry) {
-		WhitelistItem firstItem = entry.getValue().get(0);
-		return "{" +
-				"\"assertionUuid\": \"" + firstItem.getValidationRuleId() + '\"' +
-				", \"assertionText\": \"" + firstItem.getAssertionFailureText() + '\"' +
-				", \"failureCount\": " + entry.getValue().size() +
-				", \"firstNInstances\": [" + entry.getValue().stream().map(item -> item.toString(false, FULL_COMPONENT_MAX_LENGTH)).collect(Collectors.joining(",")) + "]" +
-				'}';
-	}
-
-	private List<WhitelistItem> getFirstNInstances(List<WhitelistItem> instances, int numberOfItem) {
-		if (instances == null) {
-			return Collections.emptyList();
-		}
-		if (numberOfItem < 0) {
-			return instances;
+	// The attachment is written to a file as entries are streamed, so is not held in memory
+	private void addAttachment(Issue issue, String codeSystemBranchPath, Map.Entry<String, AssertionFailures> entry) throws JiraException, BusinessServiceException {
+		WhitelistItem firstItem = entry.getValue().getFirstItem();
+		Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+		try {
+			Path directory = Files.createTempDirectory("aag-whitelist");
+			Path attachment = directory.resolve(entry.getKey() + ".json");
+			try {
+				try (JsonWriter writer = new JsonWriter(Files.newBufferedWriter(attachment, StandardCharsets.UTF_8));
+					 Stream<WhitelistItem> whitelistItems = whitelistService.streamAllByBranchAndValidationRuleId(codeSystemBranchPath, entry.getKey(), WhitelistItem.WhitelistItemType.TEMPORARY, true)) {
+					writer.setIndent("  ");
+					writer.beginObject();
+					writer.name("assertionUuid").value(firstItem.getValidationRuleId());
+					writer.name("assertionText").value(firstItem.getAssertionFailureText());
+					writer.name("failureCount").value(entry.getValue().getCount());
+					writer.name("firstNInstances").beginArray();
+					whitelistItems.forEach(item -> gson.toJson(JsonParser.parseString(item.toString(false, FULL_COMPONENT_MAX_LENGTH)), writer));
+					writer.endArray();
+					writer.endObject();
+				}
+				issue.addAttachment(attachment.toFile());
+			} finally {
+				Files.deleteIfExists(attachment);
+				Files.deleteIfExists(directory);
+			}
+		} catch (IOException e) {
+			throw new BusinessServiceException("Failed to write Jira attachment. Error: " + e.getMessage(), e);
 		}
-
-		int firstNCount = Math.min(numberOfItem, instances.size());
-		return instances.subList(0, firstNCount);
 	}
 
-	private String getPrettyString(String input) {
-		Gson gson = new GsonBuilder().disableHtmlEscaping().setPrettyPrinting().create();
-		JsonElement je = JsonParser.parseString(input);
-		return gson.toJson(je);
+	private void deleteTemporaryItems(String codeSystemBranchPath, String validationRuleId) {
+		try (Stream<WhitelistItem> whitelistItems = whitelistService.streamAllByBranchAndValidationRuleId(codeSystemBranchPath, validationRuleId, WhitelistItem.WhitelistItemType.TEMPORARY, true)) {
+			Iterators.partition(whitelistItems.iterator(), DELETE_BATCH_SIZE).forEachRemaining(whitelistService::deleteAll);
+		}
 	}
 
 	private String getEnvironment() {
@@ -220,4 +232,29 @@ public class JMSListenerSnowstormService {
 	private JiraClient getJiraClient() {
 		return jiraClientFactory.getImpersonatingInstance(reporter);
 	}
+
+	// Failure count and first few entries of an assertion
+	private static final class AssertionFailures {
+		private final List<WhitelistItem> firstNInstances = new ArrayList<>();
+		private long count;
+
+		void add(WhitelistItem whitelistItem) {
+			if (firstNInstances.size() < FIRST_N_INSTANCES) {
+				firstNInstances.add(whitelistItem);
+			}
+			count++;
+		}
+
+		WhitelistItem getFirstItem() {
+			return firstNInstances.get(0);
+		}
+
+		List<WhitelistItem> getFirstNInstances() {
+			return firstNInstances;
+		}
+
+		long getCount() {
+			return count;
+		}
+	}
 }
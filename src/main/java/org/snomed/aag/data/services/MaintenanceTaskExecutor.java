@@ -0,0 +1,16 @@
+package org.snomed.aag.data.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Single thread for long running maintenance, such as bulk deletes and index migrations, so that they run one at a time
+ * without holding up the admin request or scheduler that started them, see {@link InstrumentedExecutor}.
+ */
+@Component
+public class MaintenanceTaskExecutor extends InstrumentedExecutor {
+
+	public MaintenanceTaskExecutor(@Value("${aag.maintenance-executor.queue-capacity}") int queueCapacity) {
+		super("maintenance", 1, queueCapacity, RejectionPolicy.REJECT);
+	}
+}
@@ -0,0 +1,87 @@
+package org.snomed.aag.data.services;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.aag.data.pojo.MaintenanceTask;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Runs maintenance operations on the {@link MaintenanceTaskExecutor}, tracking each one as a {@link MaintenanceTask} so that
+ * the caller can follow its progress. Tasks are held in memory by the instance that started them, until
+ * aag.maintenance-tasks.retention after they were queued.
+ */
+@Service
+public class MaintenanceTaskService {
+
+	private final MaintenanceTaskExecutor maintenanceTaskExecutor;
+	private final Cache<String, MaintenanceTask> tasks;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(MaintenanceTaskService.class);
+
+	public MaintenanceTaskService(MaintenanceTaskExecutor maintenanceTaskExecutor,
+								  @Value("${aag.maintenance-tasks.max-size}") long maxSize,
+								  @Value("${aag.maintenance-tasks.retention}") Duration retention) {
+		this.maintenanceTaskExecutor = maintenanceTaskExecutor;
+		tasks = CacheBuilder.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(retention)
+				.build();
+	}
+
+	/**
+	 * Queue the given operation.
+	 *
+	 * @param operation Name of the operation, for display.
+	 * @param work      Operation to run, given its task, returning the result to record on the task.
+	 * @return Task tracking the operation.
+	 * @throws ServiceRuntimeException When the queue is full and refuses the operation.
+	 */
+	public MaintenanceTask submit(String operation, Function<MaintenanceTask, Map<String, Object>> work) {
+		final MaintenanceTask task = new MaintenanceTask(operation);
+		tasks.put(task.getId(), task);
+		try {
+			maintenanceTaskExecutor.submit(() -> run(task, work));
+		} catch (RejectedExecutionException e) {
+			tasks.invalidate(task.getId());
+			throw new ServiceRuntimeException(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+		}
+
+		return task;
+	}
+
+	/**
+	 * Return the task with the given identifier.
+	 *
+	 * @param id Identifier of the task.
+	 * @return Task with the given identifier.
+	 * @throws ServiceRuntimeException When no task is held with the given identifier.
+	 */
+	public MaintenanceTask getTask(String id) {
+		final MaintenanceTask task = tasks.getIfPresent(id);
+		if (task == null) {
+			throw new ServiceRuntimeException(String.format("Maintenance task %s not found.", id), HttpStatus.NOT_FOUND);
+		}
+
+		return task;
+	}
+
+	private void run(MaintenanceTask task, Function<MaintenanceTask, Map<String, Object>> work) {
+		task.start();
+		try {
+			task.complete(work.apply(task));
+			LOGGER.info("Completed {} with {}.", task, task.getResult());
+		} catch (RuntimeException e) {
+			LOGGER.error("Failed {}.", task, e);
+			task.fail(e.getMessage());
+		}
+	}
+}
@@ -1,10 +1,12 @@
 package org.snomed.aag.data.services;
 
+import co.elastic.clients.elasticsearch.core.search.FieldCollapse;
 import org.ihtsdo.otf.rest.client.RestClientException;
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Branch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.aag.data.Constants;
+import org.snomed.aag.data.client.SnowstormCircuitBreaker;
 import org.snomed.aag.data.domain.AuthoringLevel;
 import org.snomed.aag.data.domain.CriteriaItem;
 import org.snomed.aag.data.domain.ProjectAcceptanceCriteria;
@@ -14,16 +16,27 @@ import org.snomed.aag.rest.util.BranchPathUtil;
 import org.snomed.aag.rest.util.MetadataUtil;
 import org.snomed.aag.rest.util.PathUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.RefreshPolicy;
+import org.springframework.data.elasticsearch.core.SearchHit;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
+import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.bool;
 import static java.lang.String.format;
+import static org.snomed.aag.data.helper.QueryHelper.termQuery;
+import static org.snomed.aag.data.helper.QueryHelper.termsQuery;
 import static org.snomed.aag.data.domain.CriteriaItem.TASK_VALIDATION_CLEAN;
 
 @Service
@@ -46,6 +59,16 @@ public class ProjectAcceptanceCriteriaService {
     @Autowired
     private BranchSecurityService branchSecurityService;
 
+    @Autowired
+    private ElasticsearchTemplate elasticsearchTemplate;
+
+    // Number of ancestor branches to search for criteria when the branch has none of its own
+    @Value("${aag.criteria.ancestor-depth}")
+    private int ancestorDepth;
+
+    @Value("${aag.refresh-policy.criteria}")
+    private RefreshPolicy refreshPolicy;
+
 	private static void verifyParams(String branchPath, Integer projectIteration) {
         if (branchPath == null || (projectIteration != null && projectIteration < 0)) {
             throw new IllegalArgumentException(INVALID_PARAMETERS);
@@ -94,7 +117,7 @@ public class ProjectAcceptanceCriteriaService {
         }
 
         projectAcceptanceCriteria.setCreationDate(new Date());
-        repository.save(projectAcceptanceCriteria);
+        elasticsearchTemplate.withRefreshPolicy(refreshPolicy).save(projectAcceptanceCriteria);
     }
 
     /**
@@ -149,7 +172,7 @@ public class ProjectAcceptanceCriteriaService {
      * @return ProjectAcceptanceCriteria with relevant CriteriaItems
      */
     public ProjectAcceptanceCriteria findByBranchPathWithRelevantCriteriaItems(String branchPath, boolean matchAuthorFlags) {
-        ProjectAcceptanceCriteria criteria = getFromBranchOrParent(branchPath);
+        ProjectAcceptanceCriteria criteria = getFromBranchOrAncestor(branchPath);
         if (criteria == null) {
             return null;
         }
@@ -194,12 +217,13 @@ public class ProjectAcceptanceCriteriaService {
     public ProjectAcceptanceCriteria getLatestProjectAcceptanceCriteria(String branchPath) {
         verifyParams(branchPath);
 
-        List<ProjectAcceptanceCriteria> projectAcceptanceCriteria = repository.findAllByBranchPathOrderByProjectIterationDesc(branchPath);
-        if (projectAcceptanceCriteria == null || projectAcceptanceCriteria.isEmpty()) {
-            return null;
-        }
+        NativeQueryBuilder queryBuilder = new NativeQueryBuilder()
+                .withQuery(bool(b -> b.must(termQuery(ProjectAcceptanceCriteria.Fields.BRANCH_PATH, branchPath))))
+                .withSort(Sort.by(Sort.Direction.DESC, ProjectAcceptanceCriteria.Fields.PROJECT_ITERATION))
+                .withPageable(PageRequest.of(0, 1));
 
-        return projectAcceptanceCriteria.get(0);
+        SearchHit<ProjectAcceptanceCriteria> searchHit = elasticsearchTemplate.searchOne(queryBuilder.build(), ProjectAcceptanceCriteria.class);
+        return searchHit != null ? searchHit.getContent() : null;
     }
 
     /**
@@ -269,7 +293,7 @@ public class ProjectAcceptanceCriteriaService {
         ProjectAcceptanceCriteria existing = findByBranchPathAndProjectIterationOrThrow(projectAcceptanceCriteria.getBranchPath(), projectAcceptanceCriteria.getProjectIteration());
         projectAcceptanceCriteria.setCreationDate(existing.getCreationDate());
         projectAcceptanceCriteriaCreateValidator.validate(projectAcceptanceCriteria);
-        return repository.save(projectAcceptanceCriteria);
+        return elasticsearchTemplate.withRefreshPolicy(refreshPolicy).save(projectAcceptanceCriteria);
     }
 
     /**
@@ -280,7 +304,7 @@ public class ProjectAcceptanceCriteriaService {
      */
     public void delete(ProjectAcceptanceCriteria projectAcceptanceCriteria) {
         verifyParams(projectAcceptanceCriteria);
-        repository.delete(projectAcceptanceCriteria);
+        elasticsearchTemplate.withRefreshPolicy(refreshPolicy).delete(projectAcceptanceCriteria);
     }
 
 	public Set<CriteriaItem> findItemsAndMarkSignOff(ProjectAcceptanceCriteria criteria, String branchPath) {
@@ -340,22 +364,42 @@ public class ProjectAcceptanceCriteriaService {
     private Branch getBranchOrThrow(String branchPath) {
         try {
             return branchSecurityService.getBranchOrThrow(branchPath);
+        } catch (SnowstormCircuitBreaker.CallNotPermittedException e) {
+            throw new ServiceRuntimeException(String.format("Cannot fetch branch %s: %s", branchPath, e.getMessage()), HttpStatus.SERVICE_UNAVAILABLE);
         } catch (RestClientException e) {
             throw new ServiceRuntimeException(String.format("Cannot find branch %s", branchPath), HttpStatus.NOT_FOUND);
         }
     }
 
-    private ProjectAcceptanceCriteria getFromBranchOrParent(String branchPath) {
-        ProjectAcceptanceCriteria criteria = getLatestProjectAcceptanceCriteria(branchPath);
+    // Latest criteria of the nearest branch, starting with the branch itself, using a single query over the branch and its ancestors.
+    private ProjectAcceptanceCriteria getFromBranchOrAncestor(String branchPath) {
+        List<String> paths = new ArrayList<>();
+        String path = branchPath;
+        while (path != null && paths.size() <= ancestorDepth) {
+            paths.add(path);
+            path = PathUtil.getParentPath(path);
+        }
 
-        if (criteria == null) {
-            String parentPath = PathUtil.getParentPath(branchPath);
-            if (parentPath != null) {
-                criteria = getLatestProjectAcceptanceCriteria(parentPath);
+        // Collapsing on branchPath returns only the highest projectIteration of each branch
+        NativeQueryBuilder queryBuilder = new NativeQueryBuilder()
+                .withQuery(bool(b -> b.must(termsQuery(ProjectAcceptanceCriteria.Fields.BRANCH_PATH, paths))))
+                .withFieldCollapse(FieldCollapse.of(c -> c.field(ProjectAcceptanceCriteria.Fields.BRANCH_PATH)))
+                .withSort(Sort.by(Sort.Direction.DESC, ProjectAcceptanceCriteria.Fields.PROJECT_ITERATION))
+                .withPageable(PageRequest.of(0, paths.size()));
+
+        Map<String, ProjectAcceptanceCriteria> latestByBranchPath = elasticsearchTemplate.search(queryBuilder.build(), ProjectAcceptanceCriteria.class)
+                .stream()
+                .map(SearchHit::getContent)
+                .collect(Collectors.toMap(ProjectAcceptanceCriteria::getBranchPath, Function.identity(), (a, b) -> a));
+
+        for (String candidatePath : paths) {
+            ProjectAcceptanceCriteria criteria = latestByBranchPath.get(candidatePath);
+            if (criteria != null) {
+                return criteria;
             }
         }
 
-        return criteria;
+        return null;
     }
 
     private Set<CriteriaItem> getRelevantCriteriaItems(ProjectAcceptanceCriteria criteria, Set<String> enabledByFlag, boolean matchAuthorFlags) {
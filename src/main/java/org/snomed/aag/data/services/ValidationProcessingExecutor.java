@@ -0,0 +1,18 @@
+package org.snomed.aag.data.services;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded pool for processing completed validations in the background, so that Authoring Services is not held up while
+ * the validation report is fetched and sign-offs are written, see {@link InstrumentedExecutor}.
+ */
+@Component
+public class ValidationProcessingExecutor extends InstrumentedExecutor {
+
+	public ValidationProcessingExecutor(@Value("${aag.validation-executor.pool-size}") int poolSize,
+										@Value("${aag.validation-executor.queue-capacity}") int queueCapacity,
+										@Value("${aag.validation-executor.rejection-policy}") RejectionPolicy rejectionPolicy) {
+		super("validation-processing", poolSize, queueCapacity, rejectionPolicy);
+	}
+}
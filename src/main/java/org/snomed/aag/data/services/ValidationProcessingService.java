@@ -0,0 +1,88 @@
+package org.snomed.aag.data.services;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.ihtsdo.otf.rest.client.RestClientException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.aag.data.pojo.ValidationInformation;
+import org.snomed.aag.data.pojo.ValidationJob;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Processes validation complete notifications on the {@link ValidationProcessingExecutor}, tracking each one as a
+ * {@link ValidationJob} so that the caller can follow its progress. Jobs are held in memory by the instance that received
+ * the notification, until aag.validation-jobs.retention after they were queued.
+ */
+@Service
+public class ValidationProcessingService {
+
+	private final AcceptanceService acceptanceService;
+	private final ValidationProcessingExecutor validationProcessingExecutor;
+	private final Cache<String, ValidationJob> jobs;
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ValidationProcessingService.class);
+
+	public ValidationProcessingService(AcceptanceService acceptanceService, ValidationProcessingExecutor validationProcessingExecutor,
+									   @Value("${aag.validation-jobs.max-size}") long maxSize,
+									   @Value("${aag.validation-jobs.retention}") Duration retention) {
+		this.acceptanceService = acceptanceService;
+		this.validationProcessingExecutor = validationProcessingExecutor;
+		jobs = CacheBuilder.newBuilder()
+				.maximumSize(maxSize)
+				.expireAfterWrite(retention)
+				.build();
+	}
+
+	/**
+	 * Queue the given validation for processing.
+	 *
+	 * @param validationInformation Validation information including branchPath and URL to report.
+	 * @return Job tracking the processing of the validation.
+	 * @throws ServiceRuntimeException When the pool is full and refuses the validation.
+	 */
+	public ValidationJob submit(ValidationInformation validationInformation) {
+		final ValidationJob job = new ValidationJob(validationInformation.getBranchPath());
+		jobs.put(job.getId(), job);
+		try {
+			validationProcessingExecutor.submit(() -> BranchRequestScope.run(() -> process(job, validationInformation)));
+		} catch (RejectedExecutionException e) {
+			jobs.invalidate(job.getId());
+			throw new ServiceRuntimeException(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+		}
+
+		return job;
+	}
+
+	/**
+	 * Return the job with the given identifier.
+	 *
+	 * @param id Identifier of the job.
+	 * @return Job with the given identifier.
+	 * @throws ServiceRuntimeException When no job is held with the given identifier.
+	 */
+	public ValidationJob getJob(String id) {
+		final ValidationJob job = jobs.getIfPresent(id);
+		if (job == null) {
+			throw new ServiceRuntimeException(String.format("Validation job %s not found.", id), HttpStatus.NOT_FOUND);
+		}
+
+		return job;
+	}
+
+	private void process(ValidationJob job, ValidationInformation validationInformation) {
+		job.start();
+		try {
+			acceptanceService.processValidation(validationInformation);
+			job.complete();
+		} catch (RestClientException | RuntimeException e) {
+			LOGGER.error("Failed to handle validation complete notification {}.", job, e);
+			job.fail(e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package org.snomed.aag.data.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.aag.data.domain.WhitelistItem;
+import org.snomed.aag.data.pojo.MaintenanceTask;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Scheduled housekeeping of whitelist items. Each job is a delete-by-query, so running it on more than one instance is harmless.
+ * Expiry runs as a maintenance task, so that a long delete does not hold up the scheduler.
+ */
+@Service
+public class WhitelistMaintenanceService {
+
+	@Autowired
+	private WhitelistService whitelistService;
+
+	@Autowired
+	private MaintenanceTaskService maintenanceTaskService;
+
+	@Value("${aag.whitelist.temporary-expiry.enabled}")
+	private boolean temporaryExpiryEnabled;
+
+	@Value("${aag.whitelist.temporary-expiry.max-age}")
+	private Duration temporaryExpiryMaxAge;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	@Scheduled(cron = "${aag.whitelist.temporary-expiry.cron}")
+	public void expireTemporaryItems() {
+		if (!temporaryExpiryEnabled) {
+			return;
+		}
+
+		final Date maxCreationDate = new Date(System.currentTimeMillis() - temporaryExpiryMaxAge.toMillis());
+		final MaintenanceTask task = maintenanceTaskService.submit("Expire temporary whitelist items", t -> {
+			final long deleted = whitelistService.deleteAllByQuery(null, true, null, WhitelistItem.WhitelistItemType.TEMPORARY, null, maxCreationDate, t);
+			logger.info("Expired {} temporary whitelist items created before {}.", deleted, maxCreationDate);
+			return Map.of("deleted", deleted);
+		});
+		logger.info("Queued expiry of temporary whitelist items created before {} as {}.", maxCreationDate, task);
+	}
+
+	@Scheduled(cron = "${aag.whitelist.change-feed.tombstone-purge.cron}")
+	public void purgeTombstones() {
+		final long deleted = whitelistService.purgeTombstones();
+		logger.info("Purged {} whitelist item tombstones.", deleted);
+	}
+}
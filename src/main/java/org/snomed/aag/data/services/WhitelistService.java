@@ -1,41 +1,113 @@
 package org.snomed.aag.data.services;
 
+import co.elastic.clients.elasticsearch._types.Conflicts;
+import co.elastic.clients.elasticsearch._types.query_dsl.BoolQuery;
 import co.elastic.clients.elasticsearch._types.query_dsl.Query;
 import co.elastic.clients.elasticsearch._types.query_dsl.RangeQuery;
+import co.elastic.clients.json.JsonData;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Streams;
 import org.ihtsdo.sso.integration.SecurityUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.snomed.aag.data.domain.WhitelistItem;
+import org.snomed.aag.data.domain.WhitelistItemTombstone;
+import org.snomed.aag.data.pojo.MaintenanceTask;
 import org.snomed.aag.data.repositories.WhitelistItemRepository;
+import org.snomed.aag.rest.util.BranchPathUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.elasticsearch.BulkFailureException;
 import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+import org.springframework.data.elasticsearch.client.elc.NativeQuery;
 import org.springframework.data.elasticsearch.client.elc.NativeQueryBuilder;
+import org.springframework.data.elasticsearch.core.RefreshPolicy;
 import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
+import org.springframework.data.elasticsearch.core.SearchHitsIterator;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilterBuilder;
+import org.springframework.data.elasticsearch.core.query.IndexQuery;
+import org.springframework.data.elasticsearch.core.query.IndexQueryBuilder;
+import org.springframework.data.elasticsearch.core.query.Query.PointInTime;
+import org.springframework.data.elasticsearch.core.query.SourceFilter;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static co.elastic.clients.elasticsearch._types.query_dsl.QueryBuilders.bool;
 import static java.lang.String.format;
 import static org.snomed.aag.data.helper.QueryHelper.*;
+import static org.snomed.aag.data.helper.TaskHelper.awaitTask;
 
 @Service
 public class WhitelistService {
 
-	private static final Comparator<WhitelistItem> WHITELIST_ITEM_COMPARATOR = Comparator.comparing(WhitelistItem::getValidationRuleId)
-			.thenComparing(WhitelistItem::getConceptId)
-			.thenComparing(WhitelistItem::getComponentId)
-			.thenComparing(WhitelistItem::getAdditionalFields);
+	private static final int REINDEX_BATCH_SIZE = 1_000;
+	private static final int FINGERPRINT_BATCH_SIZE = 10_000;
+	// Most efficient sort for a point in time, the order of documents within each shard
+	private static final String SHARD_DOC = "_shard_doc";
+	// Tombstones are copied from the entries they replace, with the time of deletion added
+	private static final List<String> TOMBSTONE_FIELDS = List.of(WhitelistItem.Fields.ID, WhitelistItem.Fields.BRANCH,
+			WhitelistItem.Fields.ANCESTOR_PATHS, WhitelistItem.Fields.CODE_SYSTEM);
+	// How often an instance checks again for entries without derived fields, e.g. after another instance reindexed them
+	private static final long LEGACY_ENTRIES_CHECK_INTERVAL = Duration.ofMinutes(10).toMillis();
+	// Converts the ingest timestamp set on a tombstone to milliseconds
+	private static final String TOMBSTONE_SCRIPT = "ctx." + WhitelistItemTombstone.Fields.DELETION_DATE
+			+ " = ZonedDateTime.parse(ctx." + WhitelistItemTombstone.Fields.DELETION_DATE + ").toInstant().toEpochMilli()";
+	private static final Logger LOGGER = LoggerFactory.getLogger(WhitelistService.class);
+
 	@Autowired
 	private WhitelistItemRepository repository;
 
 	@Autowired
 	private ElasticsearchTemplate elasticsearchTemplate;
 
+	@Value("${aag.refresh-policy.whitelist-interactive}")
+	private RefreshPolicy interactiveRefreshPolicy;
+
+	@Value("${aag.refresh-policy.whitelist-bulk}")
+	private RefreshPolicy bulkRefreshPolicy;
+
+	@Value("${aag.whitelist.validate.window-size}")
+	private int validateWindowSize;
+
+	@Value("${aag.whitelist.bulk.chunk-size}")
+	private int bulkChunkSize;
+
+	@Value("${aag.whitelist.stream.page-size}")
+	private int streamPageSize;
+
+	@Value("${aag.whitelist.stream.keep-alive}")
+	private Duration streamKeepAlive;
+
+	@Value("${aag.whitelist.change-feed.lag}")
+	private Duration changeFeedLag;
+
+	@Value("${aag.whitelist.change-feed.tombstone-retention}")
+	private Duration tombstoneRetention;
+
+	@Value("${aag.whitelist.delete-by-query.requests-per-second}")
+	private float deleteRequestsPerSecond;
+
+	@Value("${elasticsearch.task.timeout}")
+	private Duration taskTimeout;
+
+	// Entries and tombstones without derived fields, matched by branch path until reindexed; tombstones expire instead
+	private final LegacyEntries legacyWhitelistItems = new LegacyEntries(WhitelistItem.class);
+	private final LegacyEntries legacyTombstones = new LegacyEntries(WhitelistItemTombstone.class);
+
 	private static Date getDefaultDateIfNull(Date date) {
 		if (date == null) {
 			try {
@@ -57,55 +129,139 @@ public class WhitelistService {
 	}
 
 	public List<WhitelistItem> findAllByValidationRuleIds(Set<String> validationRuleIds) {
-		NativeQueryBuilder queryBuilder = new NativeQueryBuilder()
-				.withQuery(bool(b -> b.must(termsQuery(WhitelistItem.Fields.VALIDATION_RULE_ID, validationRuleIds))))
-				.withPageable(PageRequest.of(0, 10_000));
+		try (Stream<WhitelistItem> stream = streamAllByValidationRuleIds(validationRuleIds)) {
+			return stream.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * Return all entries for the given validation rules, see {@link #streamAll(Query)}.
+	 *
+	 * @param validationRuleIds Validation rules to match.
+	 * @return Lazily fetched entries, which must be closed.
+	 */
+	public Stream<WhitelistItem> streamAllByValidationRuleIds(Set<String> validationRuleIds) {
+		return streamAll(bool(b -> b.must(termsQuery(WhitelistItem.Fields.VALIDATION_RULE_ID, validationRuleIds))));
+	}
 
-		return elasticsearchTemplate.searchForStream(queryBuilder.build(), WhitelistItem.class)
+	public List<WhitelistItem> findAllByBranchAndMinimumCreationDate(String branchPath, Date date, WhitelistItem.WhitelistItemType type, boolean includeDescendants, PageRequest pageRequest) {
+		return searchByBranchAndMinimumCreationDate(branchPath, date, type, includeDescendants, pageRequest, null)
 				.stream()
 				.map(SearchHit::getContent)
 				.collect(Collectors.toList());
 	}
 
-	public List<WhitelistItem> findAllByBranchAndMinimumCreationDate(String branchPath, Date date, WhitelistItem.WhitelistItemType type, boolean includeDescendants, PageRequest pageRequest) {
-		final Date creationDate = getDefaultDateIfNull(date);
-		Query query;
-		if (includeDescendants) {
-			Query branchQuery = bool(b -> b
-					.should(termQuery(WhitelistItem.Fields.BRANCH, branchPath))
-					.should(wildcardQuery(WhitelistItem.Fields.BRANCH, branchPath + "/*")));
-			query = bool(b -> b
-					.must(branchQuery)
-					// Must not close into another code system
-					.mustNot(wildcardQuery(WhitelistItem.Fields.BRANCH, branchPath + "/*" + "SNOMEDCT*")));
-		} else {
-			query = termQuery(WhitelistItem.Fields.BRANCH, branchPath);
+	/**
+	 * Return a page of entries for the given branch created since the given date, ordered by creation date and identifier.
+	 * Pages can be requested by number, or after the sort values of the last entry of the previous page; the latter costs
+	 * the same for every page and can be resumed later, as new entries sort after existing ones.
+	 *
+	 * @param branchPath         Branch to match.
+	 * @param date               Minimum creation date, or null for all.
+	 * @param type               Type of entries to match.
+	 * @param includeDescendants Whether to match entries of descendant branches within the same code system.
+	 * @param pageRequest        Page to return. Must be the first page when searchAfter is given.
+	 * @param searchAfter        Sort values of the entry to continue after, or null.
+	 * @return Page of entries, with sort values and the total number of matching entries.
+	 */
+	public SearchHits<WhitelistItem> searchByBranchAndMinimumCreationDate(String branchPath, Date date, WhitelistItem.WhitelistItemType type, boolean includeDescendants,
+																		  PageRequest pageRequest, List<Object> searchAfter) {
+		NativeQueryBuilder nativeQueryBuilder = new NativeQueryBuilder()
+				.withQuery(getBranchAndMinimumCreationDateQuery(branchPath, date, type, includeDescendants))
+				.withPageable(pageRequest.withSort(Sort.by(WhitelistItem.Fields.CREATION_DATE, WhitelistItem.Fields.ID)))
+				// Exact total, rather than a lower bound beyond 10k
+				.withTrackTotalHits(true);
+		if (searchAfter != null) {
+			nativeQueryBuilder.withSearchAfter(searchAfter);
 		}
 
+		return elasticsearchTemplate.search(nativeQueryBuilder.build(), WhitelistItem.class);
+	}
+
+	/**
+	 * Return all entries for the given branch created since the given date, see {@link #streamAll(Query)}.
+	 *
+	 * @param branchPath         Branch to match.
+	 * @param date               Minimum creation date, or null for all.
+	 * @param type               Type of entries to match.
+	 * @param includeDescendants Whether to match entries of descendant branches within the same code system.
+	 * @return Lazily fetched entries, which must be closed.
+	 */
+	public Stream<WhitelistItem> streamAllByBranchAndMinimumCreationDate(String branchPath, Date date, WhitelistItem.WhitelistItemType type, boolean includeDescendants) {
+		return streamAll(getBranchAndMinimumCreationDateQuery(branchPath, date, type, includeDescendants));
+	}
+
+	/**
+	 * Return all entries for the given branch and validation rule, see {@link #streamAll(Query)}.
+	 *
+	 * @param branchPath         Branch to match.
+	 * @param validationRuleId   Validation rule to match.
+	 * @param type               Type of entries to match.
+	 * @param includeDescendants Whether to match entries of descendant branches within the same code system.
+	 * @return Lazily fetched entries, which must be closed.
+	 */
+	public Stream<WhitelistItem> streamAllByBranchAndValidationRuleId(String branchPath, String validationRuleId, WhitelistItem.WhitelistItemType type, boolean includeDescendants) {
+		return streamAll(bool(b -> {
+			b.must(getBranchQuery(branchPath, includeDescendants, legacyWhitelistItems)).must(termQuery(WhitelistItem.Fields.VALIDATION_RULE_ID, validationRuleId));
+			addTypeFilter(b, type);
+			return b;
+		}));
+	}
+
+	/**
+	 * Return all entries matching the given query. Entries are fetched lazily, a page at a time, using a point in time and
+	 * search_after, so memory use is bounded by the page size rather than the number of matches and there is no 10k result limit.
+	 * The stream must be closed to release the point in time.
+	 *
+	 * @param query Query to match.
+	 * @return Lazily fetched entries, which must be closed.
+	 */
+	public Stream<WhitelistItem> streamAll(Query query) {
+		return streamAll(query, null);
+	}
+
+	private Stream<WhitelistItem> streamAll(Query query, SourceFilter sourceFilter) {
+		final PointInTimeIterator iterator = new PointInTimeIterator(query, sourceFilter);
+		return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(iterator::close);
+	}
+
+	private Query getBranchAndMinimumCreationDateQuery(String branchPath, Date date, WhitelistItem.WhitelistItemType type, boolean includeDescendants) {
+		final Date creationDate = getDefaultDateIfNull(date);
+		final Query branchQuery = getBranchQuery(branchPath, includeDescendants, legacyWhitelistItems);
 		Query creationDateQuery = bool(b -> b
 				.must(rangeQuery(WhitelistItem.Fields.CREATION_DATE, creationDate.getTime(), RangeQuery.Builder::gte)));
 
-		NativeQueryBuilder nativeQueryBuilder = new NativeQueryBuilder()
-				.withQuery(bool(b -> b
-						.must(creationDateQuery)
-						.must(query)))
-				.withPageable(pageRequest);
+		return bool(b -> {
+			b.must(creationDateQuery).must(branchQuery);
+			addTypeFilter(b, type);
+			return b;
+		});
+	}
 
+	private void addTypeFilter(BoolQuery.Builder b, WhitelistItem.WhitelistItemType type) {
 		if (type != null && !WhitelistItem.WhitelistItemType.ALL.equals(type)) {
 			if (WhitelistItem.WhitelistItemType.TEMPORARY.equals(type)) {
-				nativeQueryBuilder.withFilter(termQuery(WhitelistItem.Fields.TEMPORARY, true));
+				b.filter(termQuery(WhitelistItem.Fields.TEMPORARY, true));
 			} else {
-				Query mustNotExistQuery = bool(b -> b.mustNot(existsQuery(WhitelistItem.Fields.TEMPORARY)));
-				nativeQueryBuilder.withFilter(bool(b -> b
+				Query mustNotExistQuery = bool(bq -> bq.mustNot(existsQuery(WhitelistItem.Fields.TEMPORARY)));
+				b.filter(bool(bq -> bq
 						.should(mustNotExistQuery)
 						.should(termQuery(WhitelistItem.Fields.TEMPORARY, false))));
 			}
 		}
+	}
 
-		return elasticsearchTemplate.search(nativeQueryBuilder.build(), WhitelistItem.class)
-				.stream()
-				.map(SearchHit::getContent)
-				.collect(Collectors.toList());
+	/**
+	 * Return the given entries which are whitelisted, see {@link #validateWhitelistComponents(Set)}. Entries are consumed and
+	 * validated lazily in windows of aag.whitelist.validate.window-size, so memory use does not depend on the number of entries.
+	 *
+	 * @param whitelistItems Entries to validate.
+	 * @return Lazily validated entries which are whitelisted.
+	 */
+	public Stream<WhitelistItem> validateWhitelistComponents(Iterator<WhitelistItem> whitelistItems) {
+		return Streams.stream(Iterators.partition(whitelistItems, validateWindowSize))
+				.flatMap(window -> validateWhitelistComponents(new LinkedHashSet<>(window)).stream());
 	}
 
 	public List<WhitelistItem> validateWhitelistComponents(Set<WhitelistItem> whitelistItems) {
@@ -113,19 +269,60 @@ public class WhitelistService {
 			return Collections.EMPTY_LIST;
 		}
 
-		List<WhitelistItem> validWhitelistItems = new ArrayList <>();
-		Set<String> validationRuleIds = whitelistItems.stream().map(WhitelistItem::getValidationRuleId).collect(Collectors.toSet());
-		List<WhitelistItem> persistedWhitelistItems = findAllByValidationRuleIds(validationRuleIds);
-		for (WhitelistItem whitelistItemTobeCompared : whitelistItems) {
-			for (WhitelistItem persistedWhitelistItem : persistedWhitelistItems) {
-				if (WHITELIST_ITEM_COMPARATOR.compare(whitelistItemTobeCompared, persistedWhitelistItem) == 0) {
-					validWhitelistItems.add(whitelistItemTobeCompared);
-					break;
-				}
+		// Only fingerprints of persisted items are fetched, so payloads are never loaded
+		Map<WhitelistItem, String> fingerprints = new LinkedHashMap<>();
+		for (WhitelistItem whitelistItem : whitelistItems) {
+			fingerprints.put(whitelistItem, WhitelistItem.toFingerprint(whitelistItem.getValidationRuleId(), whitelistItem.getConceptId(),
+					whitelistItem.getComponentId(), whitelistItem.getAdditionalFields()));
+		}
+
+		Set<String> persistedFingerprints = new HashSet<>();
+		SourceFilter fingerprintOnly = new FetchSourceFilterBuilder().withIncludes(WhitelistItem.Fields.FINGERPRINT).build();
+		for (List<String> batch : Lists.partition(new ArrayList<>(new HashSet<>(fingerprints.values())), FINGERPRINT_BATCH_SIZE)) {
+			try (Stream<WhitelistItem> stream = streamAll(bool(b -> b.filter(termsQuery(WhitelistItem.Fields.FINGERPRINT, batch))), fingerprintOnly)) {
+				stream.forEach(persisted -> persistedFingerprints.add(persisted.getFingerprint()));
+			}
+		}
+
+		if (!persistedFingerprints.containsAll(fingerprints.values())) {
+			addLegacyFingerprints(fingerprints, persistedFingerprints);
+		}
+
+		return fingerprints.entrySet().stream()
+				.filter(entry -> persistedFingerprints.contains(entry.getValue()))
+				.map(Map.Entry::getKey)
+				.collect(Collectors.toList());
+	}
+
+	// Entries created before fingerprints were introduced are matched on their fields until they are reindexed
+	private void addLegacyFingerprints(Map<WhitelistItem, String> fingerprints, Set<String> persistedFingerprints) {
+		Set<String> unmatchedFingerprints = new HashSet<>();
+		Set<String> validationRuleIds = new HashSet<>();
+		Set<String> conceptIds = new HashSet<>();
+		fingerprints.forEach((whitelistItem, fingerprint) -> {
+			if (!persistedFingerprints.contains(fingerprint)) {
+				unmatchedFingerprints.add(fingerprint);
+				validationRuleIds.add(whitelistItem.getValidationRuleId());
+				conceptIds.add(whitelistItem.getConceptId());
 			}
+		});
+
+		Query legacyQuery = bool(b -> b
+				.filter(termsQuery(WhitelistItem.Fields.VALIDATION_RULE_ID, validationRuleIds))
+				.filter(termsQuery(WhitelistItem.Fields.CONCEPT_ID, conceptIds))
+				.mustNot(existsQuery(WhitelistItem.Fields.FINGERPRINT)));
+		SourceFilter contentOnly = new FetchSourceFilterBuilder().withIncludes(WhitelistItem.Fields.VALIDATION_RULE_ID, WhitelistItem.Fields.CONCEPT_ID,
+				WhitelistItem.Fields.COMPONENT_ID, WhitelistItem.Fields.ADDITIONAL_FIELDS).build();
+		try (Stream<WhitelistItem> stream = streamAll(legacyQuery, contentOnly)) {
+			stream.map(persisted -> WhitelistItem.toFingerprint(persisted.getValidationRuleId(), persisted.getConceptId(),
+							persisted.getComponentId(), persisted.getAdditionalFields()))
+					.filter(unmatchedFingerprints::contains)
+					.forEach(persistedFingerprints::add);
 		}
+	}
 
-		return validWhitelistItems;
+	public int getBulkChunkSize() {
+		return bulkChunkSize;
 	}
 
 	public WhitelistItem findOrThrow(String id) {
@@ -136,24 +333,491 @@ public class WhitelistService {
 		return itemOptional.get();
 	}
 
+	/**
+	 * Save entry in store, unless the same content has already been whitelisted on the branch. The identifier is derived
+	 * from the branch and fingerprint and the entry is written with op_type create, so duplicates are detected without a read.
+	 *
+	 * @param whitelistItem Entry to save in store.
+	 * @return Saved entry, or the existing entry with the same content on the branch.
+	 */
 	public WhitelistItem create(WhitelistItem whitelistItem) {
-		whitelistItem.setId(UUID.randomUUID().toString());
-		whitelistItem.setUserId(SecurityUtil.getUsername());
-		whitelistItem.setAdditionalFields(whitelistItem.getAdditionalFields() == null ? "" : whitelistItem.getAdditionalFields());
-		whitelistItem.setComponentId(whitelistItem.getComponentId() == null ? "" : whitelistItem.getComponentId());
-		whitelistItem.setCreationDate(new Date());
-		return repository.save(whitelistItem);
+		prepareForCreate(whitelistItem, SecurityUtil.getUsername(), new Date());
+		if (!doCreateAll(Collections.singletonList(whitelistItem), interactiveRefreshPolicy).isEmpty()) {
+			return findOrThrow(whitelistItem.getId());
+		}
+
+		return whitelistItem;
 	}
 
+	/**
+	 * Save entries in store through the bulk API, in chunks of aag.whitelist.bulk.chunk-size. As with {@link #create(WhitelistItem)},
+	 * content already whitelisted on the same branch is not saved again.
+	 *
+	 * @param whitelistItems Entries to save in store. The identifier of each entry is set.
+	 * @return Identifiers of entries which were already present.
+	 */
+	public Set<String> createAll(List<WhitelistItem> whitelistItems) {
+		String username = SecurityUtil.getUsername();
+		Date creationDate = new Date();
+		// Entries repeated within the request are only written once
+		Map<String, WhitelistItem> whitelistItemsById = new LinkedHashMap<>();
+		for (WhitelistItem whitelistItem : whitelistItems) {
+			prepareForCreate(whitelistItem, username, creationDate);
+			whitelistItemsById.putIfAbsent(whitelistItem.getId(), whitelistItem);
+		}
+
+		Set<String> alreadyPresentIds = new HashSet<>();
+		for (List<WhitelistItem> chunk : Lists.partition(new ArrayList<>(whitelistItemsById.values()), bulkChunkSize)) {
+			// Each chunk carries the time it is written, for the change feed
+			long lastModified = System.currentTimeMillis();
+			chunk.forEach(whitelistItem -> whitelistItem.setLastModified(lastModified));
+			alreadyPresentIds.addAll(doCreateAll(chunk, bulkRefreshPolicy));
+		}
+
+		return alreadyPresentIds;
+	}
+
+	/**
+	 * Save changes to an existing entry. The whitelisted content, branch and type identify an entry, see
+	 * {@link WhitelistItem#toId(String, String, boolean)}, so they cannot be changed; the entry keeps its identifier.
+	 *
+	 * @param whitelistItem Changed entry, with the identifier of the existing entry.
+	 * @return Saved entry.
+	 * @throws ServiceRuntimeException If the whitelisted content, branch or type is changed.
+	 */
 	public WhitelistItem update(WhitelistItem whitelistItem) {
-		return repository.save(whitelistItem);
+		WhitelistItem persistedWhitelistItem = findOrThrow(whitelistItem.getId());
+		setDerivedFields(whitelistItem);
+		whitelistItem.setLastModified(System.currentTimeMillis());
+		String newId = WhitelistItem.toId(whitelistItem.getBranch(), whitelistItem.getFingerprint(), whitelistItem.isTemporary());
+		// Entries created before identifiers were derived from content are compared by the identifier of their content
+		if (!newId.equals(whitelistItem.getId()) && !newId.equals(toId(persistedWhitelistItem))) {
+			throw new ServiceRuntimeException(format("The content, branch or type of whitelist item '%s' cannot be changed, delete it and create a new item instead.",
+					whitelistItem.getId()), HttpStatus.CONFLICT);
+		}
+
+		return elasticsearchTemplate.withRefreshPolicy(interactiveRefreshPolicy).save(whitelistItem);
 	}
 
 	public void delete(WhitelistItem item) {
-		repository.delete(item);
+		final WhitelistItemTombstone tombstone = new WhitelistItemTombstone(item, System.currentTimeMillis());
+		elasticsearchTemplate.withRefreshPolicy(interactiveRefreshPolicy).save(tombstone);
+		try {
+			elasticsearchTemplate.withRefreshPolicy(interactiveRefreshPolicy).delete(item.getId(), WhitelistItem.class);
+		} catch (RuntimeException e) {
+			elasticsearchTemplate.delete(tombstone);
+			throw e;
+		}
 	}
 
 	public void deleteAll(List<WhitelistItem> items) {
-		repository.deleteAll(items);
+		if (items.isEmpty()) {
+			return;
+		}
+
+		final long deletionDate = System.currentTimeMillis();
+		final List<WhitelistItemTombstone> tombstones = items.stream().map(item -> new WhitelistItemTombstone(item, deletionDate)).toList();
+		final List<String> ids = items.stream().map(WhitelistItem::getId).toList();
+		elasticsearchTemplate.withRefreshPolicy(bulkRefreshPolicy).save(tombstones);
+		try {
+			elasticsearchTemplate.withRefreshPolicy(bulkRefreshPolicy)
+					.delete(new NativeQueryBuilder().withQuery(q -> q.ids(i -> i.values(ids))).build(), WhitelistItem.class);
+		} catch (RuntimeException e) {
+			elasticsearchTemplate.delete(new NativeQueryBuilder().withQuery(q -> q.ids(i -> i.values(ids))).build(), WhitelistItemTombstone.class);
+			throw e;
+		}
+	}
+
+	/**
+	 * Delete entries matching the given criteria within Elasticsearch, without loading them. Tombstones are first copied from
+	 * the matching entries by a reindex through an ingest pipeline that stamps each with the time it is written, then the same
+	 * selection is deleted by a single delete-by-query. Both run as Elasticsearch tasks throttled to
+	 * aag.whitelist.delete-by-query.requests-per-second, the identifier of the running task being recorded on the given task.
+	 * Entries created or changed after the deletion started are kept.
+	 * <p>
+	 * When the delete fails or times out, tombstones may remain for entries that still exist; deleting again with the same
+	 * criteria removes those entries, replacing their tombstones.
+	 *
+	 * @param branchPath         Branch to match, or null for all branches.
+	 * @param includeDescendants Whether to match entries of descendant branches within the same code system.
+	 * @param validationRuleId   Validation rule to match, or null for all.
+	 * @param type               Type of entries to match.
+	 * @param fromCreationDate   Minimum creation date, or null for no minimum.
+	 * @param toCreationDate     Maximum creation date, or null for no maximum.
+	 * @param task               Task running the deletion.
+	 * @return Number of deleted entries, excluding entries changed or deleted by others meanwhile.
+	 * @throws IllegalStateException When either Elasticsearch task fails or times out after elasticsearch.task.timeout.
+	 */
+	public long deleteAllByQuery(String branchPath, boolean includeDescendants, String validationRuleId, WhitelistItem.WhitelistItemType type,
+								 Date fromCreationDate, Date toCreationDate, MaintenanceTask task) {
+		final long startDate = System.currentTimeMillis();
+		final long maxCreationDate = toCreationDate != null ? Math.min(toCreationDate.getTime(), startDate) : startDate;
+		final Query query = bool(b -> {
+			if (branchPath != null) {
+				b.must(getBranchQuery(branchPath, includeDescendants, legacyWhitelistItems));
+			}
+			if (validationRuleId != null) {
+				b.filter(termQuery(WhitelistItem.Fields.VALIDATION_RULE_ID, validationRuleId));
+			}
+			if (fromCreationDate != null) {
+				b.filter(rangeQuery(WhitelistItem.Fields.CREATION_DATE, fromCreationDate.getTime(), RangeQuery.Builder::gte));
+			}
+			b.filter(rangeQuery(WhitelistItem.Fields.CREATION_DATE, maxCreationDate, RangeQuery.Builder::lte));
+			// Entries changed after the start keep their change, entries without a modification time predate the change feed
+			b.filter(bool(modified -> modified
+					.should(rangeQuery(WhitelistItem.Fields.LAST_MODIFIED, startDate, RangeQuery.Builder::lte))
+					.should(bool(missing -> missing.mustNot(existsQuery(WhitelistItem.Fields.LAST_MODIFIED))))));
+			addTypeFilter(b, type);
+			return b;
+		});
+		final String itemIndex = elasticsearchTemplate.getIndexCoordinatesFor(WhitelistItem.class).getIndexName();
+		final String tombstoneIndex = elasticsearchTemplate.getIndexCoordinatesFor(WhitelistItemTombstone.class).getIndexName();
+		final String pipeline = putTombstonePipeline(tombstoneIndex);
+
+		final String reindexTaskId = elasticsearchTemplate.execute(client -> client.reindex(r -> r
+				.source(s -> s.index(itemIndex).query(query).sourceFields(TOMBSTONE_FIELDS))
+				.dest(d -> d.index(tombstoneIndex).pipeline(pipeline))
+				.requestsPerSecond(deleteRequestsPerSecond)
+				.refresh(true)
+				.waitForCompletion(false))).task();
+		task.setElasticsearchTaskId(reindexTaskId);
+		awaitTask(elasticsearchTemplate, reindexTaskId, taskTimeout);
+
+		final String deleteTaskId = elasticsearchTemplate.execute(client -> client.deleteByQuery(d -> d
+				.index(itemIndex)
+				.query(query)
+				.conflicts(Conflicts.Proceed)
+				.requestsPerSecond(deleteRequestsPerSecond)
+				.refresh(true)
+				.waitForCompletion(false))).task();
+		task.setElasticsearchTaskId(deleteTaskId);
+		final var status = awaitTask(elasticsearchTemplate, deleteTaskId, taskTimeout).response();
+		final long deleted = status != null ? status.deleted() : 0;
+
+		LOGGER.info("Deleted {} whitelist items of branch {}, rule {} and type {}.", deleted, branchPath, validationRuleId, type);
+		return deleted;
+	}
+
+	// Tombstones carry the time they are written, as do tombstones written by deleteAll, rather than the time the deletion started
+	private String putTombstonePipeline(String tombstoneIndex) {
+		final String pipeline = tombstoneIndex + "-deletion-date";
+		elasticsearchTemplate.execute(client -> client.ingest().putPipeline(p -> p
+				.id(pipeline)
+				.description("Stamps whitelist item tombstones with the time they are written")
+				.processors(pr -> pr.set(s -> s
+						.field(WhitelistItemTombstone.Fields.DELETION_DATE)
+						.value(JsonData.of("{{{_ingest.timestamp}}}"))))
+				.processors(pr -> pr.script(s -> s
+						.source(TOMBSTONE_SCRIPT)))));
+		return pipeline;
+	}
+
+	/**
+	 * Delete tombstones older than aag.whitelist.change-feed.tombstone-retention, after which the change feed can no longer
+	 * be read from before them, see {@link #isChangeFeedAvailable(long)}.
+	 *
+	 * @return Number of deleted tombstones.
+	 */
+	public long purgeTombstones() {
+		final long minDeletionDate = System.currentTimeMillis() - tombstoneRetention.toMillis();
+		return elasticsearchTemplate.delete(new NativeQueryBuilder()
+						.withQuery(rangeQuery(WhitelistItemTombstone.Fields.DELETION_DATE, minDeletionDate, RangeQuery.Builder::lt))
+						.build(), WhitelistItemTombstone.class)
+				.getDeleted();
+	}
+
+	/**
+	 * Return the sequence up to which the change feed can currently be read. Changes are stamped with the time each write
+	 * request is sent, so the sequence trails the current time by aag.whitelist.change-feed.lag, which must exceed the longest
+	 * single write request. Entries and tombstones are then refreshed, so every change stamped up to the sequence is visible
+	 * to the read that follows, whatever the refresh policy it was written with.
+	 *
+	 * @return Sequence to read changes up to, and to pass as since on the next read.
+	 */
+	public long getChangeFeedSequence() {
+		final long sequence = System.currentTimeMillis() - changeFeedLag.toMillis();
+		elasticsearchTemplate.indexOps(WhitelistItem.class).refresh();
+		elasticsearchTemplate.indexOps(WhitelistItemTombstone.class).refresh();
+		return sequence;
+	}
+
+	/**
+	 * Return whether changes since the given sequence can still be read. Deletions are only kept for
+	 * aag.whitelist.change-feed.tombstone-retention, older readers must read all entries again.
+	 *
+	 * @param since Sequence of the previous read.
+	 * @return Whether changes since the given sequence can be read.
+	 */
+	public boolean isChangeFeedAvailable(long since) {
+		return since >= System.currentTimeMillis() - tombstoneRetention.toMillis();
+	}
+
+	/**
+	 * Return entries for the given branch created or updated after the given sequence, see {@link #streamAll(Query)}.
+	 *
+	 * @param branchPath         Branch to match.
+	 * @param includeDescendants Whether to match entries of descendant branches within the same code system.
+	 * @param since              Sequence of the previous read, or null for all entries.
+	 * @param until              Sequence to read up to, see {@link #getChangeFeedSequence()}.
+	 * @return Lazily fetched entries, which must be closed.
+	 */
+	public Stream<WhitelistItem> streamChangedItems(String branchPath, boolean includeDescendants, Long since, long until) {
+		return streamAll(bool(b -> {
+			b.must(getBranchQuery(branchPath, includeDescendants, legacyWhitelistItems));
+			if (since != null) {
+				b.filter(rangeQuery(WhitelistItem.Fields.LAST_MODIFIED, since, RangeQuery.Builder::gt));
+				b.filter(rangeQuery(WhitelistItem.Fields.LAST_MODIFIED, until, RangeQuery.Builder::lte));
+			}
+			return b;
+		}));
+	}
+
+	/**
+	 * Return tombstones of entries for the given branch deleted after the given sequence.
+	 *
+	 * @param branchPath         Branch to match.
+	 * @param includeDescendants Whether to match entries of descendant branches within the same code system.
+	 * @param since              Sequence of the previous read.
+	 * @param until              Sequence to read up to, see {@link #getChangeFeedSequence()}.
+	 * @return Lazily fetched tombstones, which must be closed.
+	 */
+	public Stream<WhitelistItemTombstone> streamTombstones(String branchPath, boolean includeDescendants, long since, long until) {
+		final NativeQuery query = new NativeQueryBuilder()
+				.withQuery(bool(b -> b
+						.must(getBranchQuery(branchPath, includeDescendants, legacyTombstones))
+						.filter(rangeQuery(WhitelistItemTombstone.Fields.DELETION_DATE, since, RangeQuery.Builder::gt))
+						.filter(rangeQuery(WhitelistItemTombstone.Fields.DELETION_DATE, until, RangeQuery.Builder::lte))))
+				.withPageable(PageRequest.of(0, streamPageSize))
+				.build();
+		final SearchHitsIterator<WhitelistItemTombstone> iterator = elasticsearchTemplate.searchForStream(query, WhitelistItemTombstone.class);
+		return iterator.stream().map(SearchHit::getContent).onClose(iterator::close);
+	}
+
+	/**
+	 * Populate the derived fields, ancestor paths, code system and fingerprint, on entries created before they were introduced.
+	 * Once no entries or tombstones lack them, branch queries stop matching on branch path, see {@link #checkLegacyEntries()}.
+	 *
+	 * @return Number of updated entries.
+	 */
+	public long reindexDerivedFields() {
+		long updated = 0;
+		List<WhitelistItem> batch = new ArrayList<>();
+		Query missingDerivedFields = bool(b -> b
+				.should(bool(bq -> bq.mustNot(existsQuery(WhitelistItem.Fields.CODE_SYSTEM))))
+				.should(bool(bq -> bq.mustNot(existsQuery(WhitelistItem.Fields.FINGERPRINT)))));
+		try (Stream<WhitelistItem> stream = streamAll(missingDerivedFields)) {
+			Iterator<WhitelistItem> iterator = stream.iterator();
+			while (iterator.hasNext()) {
+				WhitelistItem whitelistItem = iterator.next();
+				setDerivedFields(whitelistItem);
+				batch.add(whitelistItem);
+				if (batch.size() == REINDEX_BATCH_SIZE) {
+					updated += saveBatch(batch);
+				}
+			}
+		}
+		updated += saveBatch(batch);
+
+		elasticsearchTemplate.indexOps(WhitelistItem.class).refresh();
+		checkLegacyEntries();
+		return updated;
+	}
+
+	private int saveBatch(List<WhitelistItem> batch) {
+		int size = batch.size();
+		if (size > 0) {
+			elasticsearchTemplate.withRefreshPolicy(bulkRefreshPolicy).save(batch);
+			batch.clear();
+		}
+
+		return size;
+	}
+
+	// Pages through a point in time in index order, each page continuing after the sort values of the previous one
+	private class PointInTimeIterator implements Iterator<WhitelistItem> {
+		private final Query query;
+		private final SourceFilter sourceFilter;
+		private String pointInTimeId;
+		private List<Object> searchAfter;
+		private Iterator<SearchHit<WhitelistItem>> page = Collections.emptyIterator();
+		private boolean lastPage;
+
+		private PointInTimeIterator(Query query, SourceFilter sourceFilter) {
+			this.query = query;
+			this.sourceFilter = sourceFilter;
+			this.pointInTimeId = elasticsearchTemplate.openPointInTime(elasticsearchTemplate.getIndexCoordinatesFor(WhitelistItem.class), streamKeepAlive, false);
+		}
+
+		@Override
+		public boolean hasNext() {
+			while (!page.hasNext() && !lastPage) {
+				fetchPage();
+			}
+			return page.hasNext();
+		}
+
+		@Override
+		public WhitelistItem next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			return page.next().getContent();
+		}
+
+		private void fetchPage() {
+			NativeQueryBuilder queryBuilder = new NativeQueryBuilder()
+					.withQuery(query)
+					.withPointInTime(new PointInTime(pointInTimeId, streamKeepAlive))
+					.withSort(Sort.by(SHARD_DOC))
+					.withPageable(PageRequest.of(0, streamPageSize));
+			if (searchAfter != null) {
+				queryBuilder.withSearchAfter(searchAfter);
+			}
+			if (sourceFilter != null) {
+				queryBuilder.withSourceFilter(sourceFilter);
+			}
+
+			SearchHits<WhitelistItem> searchHits = elasticsearchTemplate.search(queryBuilder.build(), WhitelistItem.class);
+			if (searchHits.getPointInTimeId() != null) {
+				pointInTimeId = searchHits.getPointInTimeId();
+			}
+
+			List<SearchHit<WhitelistItem>> hits = searchHits.getSearchHits();
+			lastPage = hits.size() < streamPageSize;
+			if (!hits.isEmpty()) {
+				searchAfter = hits.get(hits.size() - 1).getSortValues();
+			}
+			page = hits.iterator();
+		}
+
+		private void close() {
+			if (pointInTimeId != null) {
+				elasticsearchTemplate.closePointInTime(pointInTimeId);
+				pointInTimeId = null;
+			}
+		}
+	}
+
+	// Write entries with op_type create in a single bulk request. Return identifiers of entries which were already present.
+	private Set<String> doCreateAll(List<WhitelistItem> whitelistItems, RefreshPolicy refreshPolicy) {
+		if (whitelistItems.isEmpty()) {
+			return Collections.emptySet();
+		}
+
+		List<IndexQuery> indexQueries = whitelistItems.stream()
+				.map(whitelistItem -> new IndexQueryBuilder()
+						.withId(whitelistItem.getId())
+						.withObject(whitelistItem)
+						.withOpType(IndexQuery.OpType.CREATE)
+						.build())
+				.toList();
+
+		try {
+			elasticsearchTemplate.withRefreshPolicy(refreshPolicy).bulkIndex(indexQueries, WhitelistItem.class);
+			return Collections.emptySet();
+		} catch (BulkFailureException e) {
+			// Failed entries which exist were rejected as duplicates; anything else is a genuine failure
+			Set<String> failedIds = e.getFailedDocuments().keySet();
+			Set<String> alreadyPresentIds = new HashSet<>();
+			repository.findAllById(failedIds).forEach(existing -> alreadyPresentIds.add(existing.getId()));
+			if (alreadyPresentIds.size() != failedIds.size()) {
+				throw e;
+			}
+
+			return alreadyPresentIds;
+		}
+	}
+
+	// Tombstones hold the same branch fields as entries, so are matched by the same query
+	private Query getBranchQuery(String branchPath, boolean includeDescendants, LegacyEntries legacyEntries) {
+		if (!includeDescendants) {
+			return termQuery(WhitelistItem.Fields.BRANCH, branchPath);
+		}
+
+		Query descendantsQuery = bool(b -> b
+				.must(termQuery(WhitelistItem.Fields.ANCESTOR_PATHS, branchPath))
+				// Must not close into another code system
+				.must(termQuery(WhitelistItem.Fields.CODE_SYSTEM, BranchPathUtil.extractCodeSystem(branchPath))));
+		if (!legacyEntries.isPresent()) {
+			return bool(b -> b
+					.should(termQuery(WhitelistItem.Fields.BRANCH, branchPath))
+					.should(descendantsQuery));
+		}
+
+		// Entries created before the derived fields were introduced are matched on branch path until they are reindexed
+		Query legacyDescendantsQuery = bool(b -> b
+				.must(wildcardQuery(WhitelistItem.Fields.BRANCH, branchPath + "/*"))
+				.mustNot(wildcardQuery(WhitelistItem.Fields.BRANCH, branchPath + "/*" + "SNOMEDCT*"))
+				.mustNot(existsQuery(WhitelistItem.Fields.CODE_SYSTEM)));
+		return bool(b -> b
+				.should(termQuery(WhitelistItem.Fields.BRANCH, branchPath))
+				.should(descendantsQuery)
+				.should(legacyDescendantsQuery));
+	}
+
+	/**
+	 * Check again whether any entries or tombstones lack the derived fields. Until none do, branch queries including
+	 * descendants also match on branch path, with wildcard queries.
+	 *
+	 * @return Whether any entries or tombstones lack the derived fields.
+	 */
+	boolean checkLegacyEntries() {
+		return legacyWhitelistItems.check() | legacyTombstones.check();
+	}
+
+	// Whether documents of a class may lack the derived fields; once none do, new documents always have them
+	private class LegacyEntries {
+		private final Class<?> documentClass;
+		private volatile boolean present = true;
+		private volatile long checkedAt;
+
+		private LegacyEntries(Class<?> documentClass) {
+			this.documentClass = documentClass;
+		}
+
+		private boolean isPresent() {
+			if (present && System.currentTimeMillis() - checkedAt > LEGACY_ENTRIES_CHECK_INTERVAL) {
+				check();
+			}
+			return present;
+		}
+
+		private boolean check() {
+			final Query query = new NativeQueryBuilder()
+					.withQuery(bool(b -> b.mustNot(existsQuery(WhitelistItem.Fields.CODE_SYSTEM))))
+					.build();
+			present = elasticsearchTemplate.count(query, documentClass) > 0;
+			checkedAt = System.currentTimeMillis();
+			if (!present) {
+				LOGGER.info("No {} without derived fields remain; branch queries no longer match on branch path.", documentClass.getSimpleName());
+			}
+			return present;
+		}
+	}
+
+	private void prepareForCreate(WhitelistItem whitelistItem, String username, Date creationDate) {
+		whitelistItem.setUserId(username);
+		whitelistItem.setAdditionalFields(whitelistItem.getAdditionalFields() == null ? "" : whitelistItem.getAdditionalFields());
+		whitelistItem.setComponentId(whitelistItem.getComponentId() == null ? "" : whitelistItem.getComponentId());
+		whitelistItem.setCreationDate(creationDate);
+		whitelistItem.setLastModified(creationDate.getTime());
+		setDerivedFields(whitelistItem);
+		whitelistItem.setId(toId(whitelistItem));
+	}
+
+	private String toId(WhitelistItem whitelistItem) {
+		String fingerprint = WhitelistItem.toFingerprint(whitelistItem.getValidationRuleId(), whitelistItem.getConceptId(),
+				whitelistItem.getComponentId(), whitelistItem.getAdditionalFields());
+		return WhitelistItem.toId(whitelistItem.getBranch(), fingerprint, whitelistItem.isTemporary());
+	}
+
+	private void setDerivedFields(WhitelistItem whitelistItem) {
+		String branch = whitelistItem.getBranch();
+		if (branch != null) {
+			whitelistItem.setAncestorPaths(BranchPathUtil.getAncestorPaths(branch));
+			whitelistItem.setCodeSystem(BranchPathUtil.extractCodeSystem(branch));
+		}
+		whitelistItem.setFingerprint(WhitelistItem.toFingerprint(whitelistItem.getValidationRuleId(), whitelistItem.getConceptId(),
+				whitelistItem.getComponentId(), whitelistItem.getAdditionalFields()));
 	}
 }
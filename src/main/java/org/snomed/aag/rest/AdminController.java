@@ -5,12 +5,27 @@ import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import org.ihtsdo.otf.rest.client.RestClientException;
 import org.snomed.aag.data.domain.CriteriaItemSignOff;
+import org.snomed.aag.data.domain.WhitelistItem;
+import org.snomed.aag.data.domain.WhitelistItemTombstone;
+import org.snomed.aag.data.pojo.MaintenanceTask;
 import org.snomed.aag.data.services.AcceptanceService;
+import org.snomed.aag.data.services.AcceptanceStatusService;
+import org.snomed.aag.data.services.BranchSecurityService;
+import org.snomed.aag.data.services.CommitLedger;
+import org.snomed.aag.data.services.CommitProcessingLanes;
+import org.snomed.aag.data.services.CriteriaItemSignOffService;
+import org.snomed.aag.data.services.IndexMigrationService;
+import org.snomed.aag.data.services.MaintenanceTaskService;
+import org.snomed.aag.data.services.ValidationProcessingExecutor;
+import org.snomed.aag.data.services.WhitelistService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
+import java.util.Date;
+import java.util.Map;
 import java.util.Set;
 
 @RestController
@@ -18,9 +33,30 @@ import java.util.Set;
 @RequestMapping(value = "/admin", produces = "application/json")
 public class AdminController {
 	private final AcceptanceService acceptanceService;
+	private final BranchSecurityService securityService;
+	private final AcceptanceStatusService acceptanceStatusService;
+	private final CriteriaItemSignOffService criteriaItemSignOffService;
+	private final WhitelistService whitelistService;
+	private final IndexMigrationService indexMigrationService;
+	private final CommitProcessingLanes commitProcessingLanes;
+	private final ValidationProcessingExecutor validationProcessingExecutor;
+	private final CommitLedger commitLedger;
+	private final MaintenanceTaskService maintenanceTaskService;
 
-	public AdminController(AcceptanceService acceptanceService) {
+	public AdminController(AcceptanceService acceptanceService, BranchSecurityService securityService, AcceptanceStatusService acceptanceStatusService,
+						   CriteriaItemSignOffService criteriaItemSignOffService, WhitelistService whitelistService, IndexMigrationService indexMigrationService,
+						   CommitProcessingLanes commitProcessingLanes, ValidationProcessingExecutor validationProcessingExecutor,
+						   CommitLedger commitLedger, MaintenanceTaskService maintenanceTaskService) {
 		this.acceptanceService = acceptanceService;
+		this.securityService = securityService;
+		this.acceptanceStatusService = acceptanceStatusService;
+		this.criteriaItemSignOffService = criteriaItemSignOffService;
+		this.whitelistService = whitelistService;
+		this.indexMigrationService = indexMigrationService;
+		this.commitProcessingLanes = commitProcessingLanes;
+		this.validationProcessingExecutor = validationProcessingExecutor;
+		this.commitLedger = commitLedger;
+		this.maintenanceTaskService = maintenanceTaskService;
 	}
 
 	@PostMapping("/criteria/{branchPath}/accept")
@@ -46,5 +82,109 @@ public class AdminController {
 				.status(HttpStatus.NO_CONTENT)
 				.build();
 	}
-}
 
+	@GetMapping("/branch-cache/stats")
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	@Operation(summary = "Get statistics of the Snowstorm branch cache")
+	public Map<String, Object> getBranchCacheStats() {
+		return securityService.getBranchCacheStats();
+	}
+
+	@GetMapping("/commit-executor/stats")
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	@Operation(summary = "Get statistics of the Snowstorm commit processing pool and per branch lanes")
+	public Map<String, Object> getCommitExecutorStats() {
+		return commitProcessingLanes.getStats();
+	}
+
+	@GetMapping("/validation-executor/stats")
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	@Operation(summary = "Get statistics of the validation complete processing pool")
+	public Map<String, Object> getValidationExecutorStats() {
+		return validationProcessingExecutor.getStats();
+	}
+
+	@GetMapping("/commit-ledger/stats")
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	@Operation(summary = "Get statistics of the ledger of processed Snowstorm commits, including commits skipped as duplicate or out of order")
+	public Map<String, Object> getCommitLedgerStats() {
+		return commitLedger.getStats();
+	}
+
+	@DeleteMapping("/commit-ledger")
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	@Operation(summary = "Forget processed Snowstorm commits, so that any commit is processed again")
+	public ResponseEntity<?> clearCommitLedger() {
+		commitLedger.clear();
+
+		return ResponseEntity
+				.status(HttpStatus.NO_CONTENT)
+				.build();
+	}
+
+	@PostMapping("/acceptance-status/rebuild")
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	@Operation(summary = "Rebuild the acceptance status of all branches from criteria item sign-offs")
+	public Map<String, Object> rebuildAcceptanceStatus() {
+		return Map.of("branches", acceptanceStatusService.rebuildAll());
+	}
+
+	@PostMapping("/criteria-item-sign-off/rekey")
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	@Operation(summary = "Migrate criteria item sign-offs to identifiers derived from criteria item, branch and project iteration")
+	public Map<String, Object> rekeyCriteriaItemSignOffs() {
+		return Map.of("rekeyed", criteriaItemSignOffService.rekeyAll());
+	}
+
+	@PostMapping("/whitelist-items/reindex")
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	@Operation(summary = "Populate the ancestor paths, code system and fingerprint of whitelist items created before these fields existed",
+			description = "Once no whitelist items or tombstones lack these fields, queries including descendant branches no longer match on branch path. " +
+					"Run after all gateway instances have been upgraded; other instances notice within 10 minutes.")
+	public Map<String, Object> reindexWhitelistItems() {
+		return Map.of("updated", whitelistService.reindexDerivedFields());
+	}
+
+	@DeleteMapping("/whitelist-items")
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	@Operation(summary = "Delete whitelist items by branch, validation rule, type and creation date range",
+			description = "Items are deleted in the background within Elasticsearch, by a single throttled delete-by-query task, without being loaded. " +
+					"Returns the maintenance task, whose result holds the number of items actually deleted once completed. Creation dates are in milliseconds.")
+	public ResponseEntity<MaintenanceTask> deleteWhitelistItems(@RequestParam String branch,
+													            @RequestParam(required = false, defaultValue = "true") boolean includeDescendants,
+													            @RequestParam(required = false) String validationRuleId,
+													            @RequestParam(required = false, defaultValue = "ALL") WhitelistItem.WhitelistItemType type,
+													            @RequestParam(required = false) Long fromCreationDate,
+													            @RequestParam(required = false) Long toCreationDate) {
+		final Date from = fromCreationDate != null ? new Date(fromCreationDate) : null;
+		final Date to = toCreationDate != null ? new Date(toCreationDate) : null;
+		final MaintenanceTask task = maintenanceTaskService.submit("Delete whitelist items", t ->
+				Map.of("deleted", whitelistService.deleteAllByQuery(branch, includeDescendants, validationRuleId, type, from, to, t)));
+		return ResponseEntity.accepted()
+				.location(URI.create("/admin/tasks/" + task.getId()))
+				.body(task);
+	}
+
+	@GetMapping("/tasks/{id}")
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	@Operation(summary = "Retrieve a maintenance task started by this instance",
+			description = "Tasks are kept for aag.maintenance-tasks.retention after they were queued.")
+	public MaintenanceTask getMaintenanceTask(@PathVariable String id) {
+		return maintenanceTaskService.getTask(id);
+	}
+
+	@PostMapping("/whitelist-items/migrate-index")
+	@PreAuthorize("hasPermission('ADMIN', 'global')")
+	@Operation(summary = "Copy whitelist items into an index with the current mapping and switch the whitelist alias to it",
+			description = "Whitelist items are copied in the background and can be read and written throughout, except for a few seconds " +
+					"while the last changes are copied and the alias is switched. Returns the maintenance task, whose result holds the index once completed.")
+	public ResponseEntity<MaintenanceTask> migrateWhitelistIndex() {
+		final IndexMigrationService.ChangeTracking changeTracking = new IndexMigrationService.ChangeTracking(WhitelistItem.Fields.LAST_MODIFIED,
+				WhitelistItemTombstone.class, WhitelistItemTombstone.Fields.DELETION_DATE);
+		final MaintenanceTask task = maintenanceTaskService.submit("Migrate whitelist index", t ->
+				Map.of("index", indexMigrationService.migrate(WhitelistItem.class, WhitelistItem.MAPPING_VERSION, changeTracking, t)));
+		return ResponseEntity.accepted()
+				.location(URI.create("/admin/tasks/" + task.getId()))
+				.body(task);
+	}
+}
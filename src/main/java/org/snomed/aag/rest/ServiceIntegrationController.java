@@ -8,20 +8,27 @@ import org.slf4j.LoggerFactory;
 import org.snomed.aag.data.domain.ProjectAcceptanceCriteria;
 import org.snomed.aag.data.pojo.CommitInformation;
 import org.snomed.aag.data.pojo.ValidationInformation;
-import org.snomed.aag.data.services.AcceptanceService;
+import org.snomed.aag.data.pojo.ValidationJob;
+import org.snomed.aag.data.services.BranchCallSite;
+import org.snomed.aag.data.services.BranchSecurityService;
+import org.snomed.aag.data.services.CommitProcessingLanes;
+import org.snomed.aag.data.services.CommitQueueService;
 import org.snomed.aag.data.services.ProjectAcceptanceCriteriaService;
+import org.snomed.aag.data.services.ServiceRuntimeException;
+import org.snomed.aag.data.services.ValidationProcessingService;
 import org.snomed.aag.data.validators.CommitInformationValidator;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.security.core.context.SecurityContext;
-import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.jms.JmsException;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.net.URI;
+import java.util.concurrent.RejectedExecutionException;
 
 @RestController
 @Tag(name = "Service Integration")
@@ -30,18 +37,24 @@ public class ServiceIntegrationController {
 
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 	private final CommitInformationValidator commitInformationValidator;
-	private final AcceptanceService acceptanceService;
 	private final ProjectAcceptanceCriteriaService projectAcceptanceCriteriaService;
+	private final BranchSecurityService securityService;
+	private final CommitProcessingLanes commitProcessingLanes;
+	private final CommitQueueService commitQueueService;
+	private final ValidationProcessingService validationProcessingService;
 
-	public ServiceIntegrationController(CommitInformationValidator commitInformationValidator, AcceptanceService acceptanceService,
-										ProjectAcceptanceCriteriaService projectAcceptanceCriteriaService) {
+	public ServiceIntegrationController(CommitInformationValidator commitInformationValidator,
+										ProjectAcceptanceCriteriaService projectAcceptanceCriteriaService, BranchSecurityService securityService,
+										CommitProcessingLanes commitProcessingLanes, CommitQueueService commitQueueService,
+										ValidationProcessingService validationProcessingService) {
 		this.commitInformationValidator = commitInformationValidator;
-		this.acceptanceService = acceptanceService;
 		this.projectAcceptanceCriteriaService = projectAcceptanceCriteriaService;
+		this.securityService = securityService;
+		this.commitProcessingLanes = commitProcessingLanes;
+		this.commitQueueService = commitQueueService;
+		this.validationProcessingService = validationProcessingService;
 	}
 
-    private final ExecutorService executorService = Executors.newCachedThreadPool();
-
 	@Operation(summary = "Receive commit information from Snowstorm.",
 			description = "This function is called by the Snowstorm Terminology server when a commit is made. " +
 					"This information is used to perform automatic actions within this service like accepting or expiring acceptance items. "
@@ -52,13 +65,15 @@ public class ServiceIntegrationController {
 		logger.info("Received commit information {} from user {}", commitInformation, username);
 
 		commitInformationValidator.validate(commitInformation);
+		invalidateBranchCache(commitInformation);
 		final CommitInformation.CommitType commitType = commitInformation.getCommitType();
 		if (commitType != CommitInformation.CommitType.PROMOTION) {
 			processCommitAsync(commitInformation);
 			return ResponseEntity.status(HttpStatus.OK).build();
 		} else {
 			String sourceBranchPath = commitInformation.getSourceBranchPath();
-			ProjectAcceptanceCriteria projectAcceptanceCriteria = projectAcceptanceCriteriaService.findByBranchPathWithRelevantCriteriaItems(sourceBranchPath, true);
+			// The promotion gate uses its own stale fallback policy; by default it fails closed while Snowstorm is unavailable
+			ProjectAcceptanceCriteria projectAcceptanceCriteria = BranchCallSite.PROMOTION.run(() -> projectAcceptanceCriteriaService.findByBranchPathWithRelevantCriteriaItems(sourceBranchPath, true));
 			if (projectAcceptanceCriteria == null) {
 				String message = String.format("No Project Acceptance Criteria found for branch %s. Returning %s.", sourceBranchPath, HttpStatus.NO_CONTENT);
 				logger.info(message);
@@ -67,7 +82,7 @@ public class ServiceIntegrationController {
 						.body(message);
 			}
 
-			boolean pacComplete = projectAcceptanceCriteriaService.incrementIfComplete(projectAcceptanceCriteria, sourceBranchPath);
+			boolean pacComplete = BranchCallSite.PROMOTION.run(() -> projectAcceptanceCriteriaService.incrementIfComplete(projectAcceptanceCriteria, sourceBranchPath));
 			if (pacComplete) {
 				logger.info("Project Acceptance Criteria for {} is complete. Promotion is recommended.", sourceBranchPath);
 				processCommitAsync(commitInformation);
@@ -81,27 +96,56 @@ public class ServiceIntegrationController {
 
 	@Operation(summary = "Receive validation report information from Authoring Services.",
 			description = "This function is called by Authoring Services when an RVF validation completes. " +
-					"This information may automatically accept a validation acceptance item. "
+					"This information may automatically accept a validation acceptance item. " +
+					"The validation is processed in the background, which can be followed at the URL in the Location header."
 	)
 	@PostMapping("/validation-complete")
 	public ResponseEntity<Void> receiveValidation(@RequestBody ValidationInformation validationInformation) {
 		final String username = SecurityUtil.getUsername();
 		logger.info("Received validation information {} from user {}", validationInformation, username);
 
-		// Prevent the processing of this call slowing down the snowstorm commit
-		acceptanceService.processValidationAsync(validationInformation);
+		// Prevent the processing of this call slowing down Authoring Services
+		final ValidationJob job = validationProcessingService.submit(validationInformation);
+
+		// Authoring Services expects 200 without a body, the job is only referenced from a header
+		return ResponseEntity
+				.status(HttpStatus.OK)
+				.location(URI.create("/integration/validation-complete/" + job.getId()))
+				.build();
+	}
 
-		return ResponseEntity.status(HttpStatus.OK).build();
+	@Operation(summary = "Get the status of a validation report sent by Authoring Services.")
+	@GetMapping("/validation-complete/{id}")
+	public ValidationJob getValidationJob(@PathVariable(name = "id") String id) {
+		return validationProcessingService.getJob(id);
+	}
+
+	private void invalidateBranchCache(CommitInformation commitInformation) {
+		// Snowstorm tells us exactly which branches have changed, no need to wait for cached branches to expire
+		securityService.invalidateBranchCache(commitInformation.getSourceBranchPath(), commitInformation.getHeadTime());
+		if (commitInformation.getTargetBranchPath() != null) {
+			securityService.invalidateBranchCache(commitInformation.getTargetBranchPath(), commitInformation.getHeadTime());
+		}
 	}
 
 	private void processCommitAsync(CommitInformation commitInformation) {
 		// Prevent the processing of this call slowing down the snowstorm commit
-		// All business logic within the service method
-		final SecurityContext context = SecurityContextHolder.getContext();
-		executorService.submit(() -> {
-			SecurityContextHolder.setContext(context);// Security context brought across into new thread
-			acceptanceService.processCommit(commitInformation);
-		});
+		if (commitQueueService.isEnabled()) {
+			try {
+				commitQueueService.publish(commitInformation);
+			} catch (JmsException e) {
+				logger.error("Failed to publish commit {}.", commitInformation, e);
+				throw new ServiceRuntimeException("Failed to queue commit.", HttpStatus.SERVICE_UNAVAILABLE);
+			}
+			return;
+		}
+
+		// Commits are processed one at a time per branch, with the security context of the request
+		try {
+			commitProcessingLanes.submit(commitInformation);
+		} catch (RejectedExecutionException e) {
+			throw new ServiceRuntimeException(e.getMessage(), HttpStatus.SERVICE_UNAVAILABLE);
+		}
 	}
 
 }
@@ -1,10 +1,18 @@
 package org.snomed.aag.rest;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.RuntimeJsonMappingException;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import io.kaicode.rest.util.branchpathrewrite.BranchPathUriUtil;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletResponse;
 import org.apache.commons.lang.StringUtils;
 import org.ihtsdo.otf.rest.client.RestClientException;
 import org.slf4j.Logger;
@@ -13,28 +21,48 @@ import org.snomed.aag.data.domain.WhitelistItem;
 import org.snomed.aag.data.services.BranchSecurityService;
 import org.snomed.aag.data.services.ServiceRuntimeException;
 import org.snomed.aag.data.services.WhitelistService;
+import org.snomed.aag.rest.pojo.WhitelistItemBulkResult;
+import org.snomed.aag.rest.pojo.WhitelistItemChange;
+import org.snomed.aag.rest.util.SearchAfterUtil;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.elasticsearch.core.SearchHit;
+import org.springframework.data.elasticsearch.core.SearchHits;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.Date;
-import java.util.List;
-import java.util.Set;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.stream.Stream;
 
 @RestController
 @Tag(name = "Whitelist")
 @RequestMapping(value = "/whitelist-items", produces = "application/json")
 public class WhitelistController {
     private static final Logger LOGGER = LoggerFactory.getLogger(WhitelistController.class);
+    // Cursor of the next page, only present when the page is full
+    private static final String SEARCH_AFTER_HEADER = "X-Search-After";
+    // Number of items matching the request across all pages
+    private static final String TOTAL_COUNT_HEADER = "X-Total-Count";
+    // Sequence to pass as since on the next read of the change feed
+    private static final String SEQUENCE_HEADER = "X-Sequence";
 
     private final WhitelistService whitelistService;
     private final BranchSecurityService securityService;
+    private final ObjectReader whitelistItemReader;
+    private final ObjectWriter whitelistItemWriter;
+    private final ObjectWriter whitelistItemChangeWriter;
 
-    public WhitelistController(WhitelistService whitelistService, BranchSecurityService securityService) {
+    public WhitelistController(WhitelistService whitelistService, BranchSecurityService securityService, ObjectMapper objectMapper) {
         this.whitelistService = whitelistService;
         this.securityService = securityService;
+        // Newline delimited JSON is read and written with the same mapper as request and response bodies
+        this.whitelistItemReader = objectMapper.readerFor(WhitelistItem.class);
+        this.whitelistItemWriter = objectMapper.writerFor(WhitelistItem.class).withRootValueSeparator("\n");
+        this.whitelistItemChangeWriter = objectMapper.writerFor(WhitelistItemChange.class).withRootValueSeparator("\n");
     }
 
     @GetMapping
@@ -75,6 +103,79 @@ public class WhitelistController {
         return whitelistService.validateWhitelistComponents(whitelistItems);
     }
 
+    @Operation(summary = "Validate components against whitelist, streaming newline delimited JSON",
+            description = "As bulk-validate, but components are read and the valid ones written as newline delimited JSON, " +
+                    "a window at a time, so that large payloads are never held in memory.")
+    @PostMapping(value = "/bulk-validate", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void bulkValidateStream(InputStream body, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        try (MappingIterator<WhitelistItem> whitelistItems = whitelistItemReader.readValues(body);
+             Stream<WhitelistItem> validWhitelistItems = whitelistService.validateWhitelistComponents(whitelistItems);
+             SequenceWriter writer = whitelistItemWriter.writeValues(response.getOutputStream())) {
+            Iterator<WhitelistItem> iterator = validWhitelistItems.iterator();
+            while (iterator.hasNext()) {
+                writer.write(iterator.next());
+            }
+        } catch (RuntimeJsonMappingException e) {
+            throw new IllegalArgumentException("Invalid whitelist items: " + e.getMessage());
+        }
+    }
+
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+    @Operation(summary = "Create whitelist items in bulk",
+            description = "Accepts a JSON array or newline delimited JSON. Items are validated as for a single item and written through the " +
+                    "Elasticsearch bulk API. Returns the outcome of each item, in request order.")
+    public List<WhitelistItemBulkResult> addWhitelistItems(InputStream body) throws IOException {
+        // Items are written a chunk at a time as they are read, so only the results are held for the whole request
+        List<WhitelistItemBulkResult> results = new ArrayList<>();
+        Set<String> seenIds = new HashSet<>();
+        try (MappingIterator<WhitelistItem> iterator = whitelistItemReader.readValues(body)) {
+            int index = 0;
+            List<WhitelistItem> chunk = new ArrayList<>();
+            while (iterator.hasNextValue()) {
+                chunk.add(iterator.nextValue());
+                if (chunk.size() == whitelistService.getBulkChunkSize()) {
+                    index = addWhitelistItemsChunk(chunk, index, seenIds, results);
+                }
+            }
+            addWhitelistItemsChunk(chunk, index, seenIds, results);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid whitelist items: " + e.getOriginalMessage());
+        }
+
+        return results;
+    }
+
+    // Create the valid items of the chunk and add the outcome of each item to results. Return the index of the next item.
+    private int addWhitelistItemsChunk(List<WhitelistItem> chunk, int firstIndex, Set<String> seenIds, List<WhitelistItemBulkResult> results) {
+        List<WhitelistItem> validWhitelistItems = new ArrayList<>();
+        Map<Integer, String> errors = new HashMap<>();
+        for (int i = 0; i < chunk.size(); i++) {
+            try {
+                validateSingleWhiteListItem(chunk.get(i));
+                validWhitelistItems.add(chunk.get(i));
+            } catch (ServiceRuntimeException e) {
+                errors.put(i, e.getMessage());
+            }
+        }
+
+        Set<String> alreadyPresentIds = whitelistService.createAll(validWhitelistItems);
+
+        for (int i = 0; i < chunk.size(); i++) {
+            if (errors.containsKey(i)) {
+                results.add(new WhitelistItemBulkResult(firstIndex + i, null, WhitelistItemBulkResult.Status.INVALID, errors.get(i)));
+            } else {
+                String id = chunk.get(i).getId();
+                boolean alreadyPresent = !seenIds.add(id) || alreadyPresentIds.contains(id);
+                results.add(new WhitelistItemBulkResult(firstIndex + i, id, alreadyPresent ? WhitelistItemBulkResult.Status.ALREADY_PRESENT : WhitelistItemBulkResult.Status.CREATED, null));
+            }
+        }
+
+        int nextIndex = firstIndex + chunk.size();
+        chunk.clear();
+        return nextIndex;
+    }
+
     @PostMapping
     @Operation(summary = "Create a new whitelist item")
     public ResponseEntity<WhitelistItem> addWhitelistItemOld(@RequestBody WhitelistItem whitelistItem) {
@@ -123,7 +224,9 @@ public class WhitelistController {
     }
 
     @PutMapping(value = "/item/{id}")
-    @Operation(summary = "Update an existing whitelist item by id")
+    @Operation(summary = "Update an existing whitelist item by id",
+            description = "Only the reason can be changed. The validation rule, concept, component, additional fields, branch and type identify an item; " +
+                    "changing them returns 409, delete the item and create a new one instead.")
     public ResponseEntity<WhitelistItem> updateWhitelistItem(@PathVariable String id, @RequestBody WhitelistItem whitelistItem) {
         WhitelistItem persistedWhitelistItem = whitelistService.findOrThrow(id);
         persistedWhitelistItem.setAdditionalFields(whitelistItem.getAdditionalFields());
@@ -148,12 +251,16 @@ public class WhitelistController {
     }
 
     @GetMapping("/{branch}")
-    @Operation(summary = "Find whitelist items by branch path")
+    @Operation(summary = "Find whitelist items by branch path",
+            description = "Items are ordered by creation date. Pages can be requested by number or, at constant cost, by passing the " +
+                    SEARCH_AFTER_HEADER + " header of the previous page as searchAfter; an empty searchAfter requests the first page. " +
+                    "The " + TOTAL_COUNT_HEADER + " header is the number of items matching across all pages.")
     public ResponseEntity<?> findForBranch(@PathVariable String branch, @RequestParam(required = false) Long creationDate,
                                            @RequestParam(required = false, defaultValue = "true") boolean includeDescendants,
                                            @RequestParam(required = false, defaultValue = "ALL") WhitelistItem.WhitelistItemType type,
                                            @RequestParam(required = false, defaultValue = "0") int page,
-                                           @RequestParam(required = false, defaultValue = "100") int size) throws RestClientException {
+                                           @RequestParam(required = false, defaultValue = "100") int size,
+                                           @RequestParam(required = false) String searchAfter) throws RestClientException {
         branch = BranchPathUriUtil.decodePath(branch);
         securityService.getBranchOrThrow(branch);
 
@@ -162,12 +269,51 @@ public class WhitelistController {
             date = new Date(creationDate);
         }
 
-        List<WhitelistItem> whitelistItems = whitelistService.findAllByBranchAndMinimumCreationDate(branch, date, type, includeDescendants, PageRequest.of(page, size));
+        PageRequest pageRequest = PageRequest.of(searchAfter != null ? 0 : page, size);
+        SearchHits<WhitelistItem> hits = whitelistService.searchByBranchAndMinimumCreationDate(branch, date, type, includeDescendants,
+                pageRequest, SearchAfterUtil.fromToken(searchAfter));
+        List<SearchHit<WhitelistItem>> searchHits = hits.getSearchHits();
+        List<WhitelistItem> whitelistItems = searchHits.stream().map(SearchHit::getContent).toList();
         HttpStatus httpStatus = HttpStatus.OK;
         if (whitelistItems.isEmpty()) {
             httpStatus = HttpStatus.NO_CONTENT;
         }
 
-        return ResponseEntity.status(httpStatus).body(whitelistItems);
+        ResponseEntity.BodyBuilder responseBuilder = ResponseEntity.status(httpStatus)
+                .header(TOTAL_COUNT_HEADER, String.valueOf(hits.getTotalHits()));
+        if (whitelistItems.size() == size) {
+            responseBuilder.header(SEARCH_AFTER_HEADER, SearchAfterUtil.toToken(searchHits.get(searchHits.size() - 1).getSortValues()));
+        }
+
+        return responseBuilder.body(whitelistItems);
+    }
+
+    @GetMapping(value = "/{branch}/changes", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Find whitelist item changes by branch path",
+            description = "Returns newline delimited JSON of the items deleted and then the items created or updated since the given sequence, " +
+                    "or of all items when no sequence is given. The " + SEQUENCE_HEADER + " header is the since of the next request. " +
+                    "Deletions are only kept for a limited time, after which 410 is returned and all items must be read again.")
+    public void findChangesForBranch(@PathVariable String branch, @RequestParam(required = false) Long since,
+                                     @RequestParam(required = false, defaultValue = "true") boolean includeDescendants,
+                                     HttpServletResponse response) throws RestClientException, IOException {
+        branch = BranchPathUriUtil.decodePath(branch);
+        securityService.getBranchOrThrow(branch);
+        if (since != null && !whitelistService.isChangeFeedAvailable(since)) {
+            throw new ServiceRuntimeException(String.format("Changes since %s are no longer available, all items must be read again.", since), HttpStatus.GONE);
+        }
+
+        long until = whitelistService.getChangeFeedSequence();
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setHeader(SEQUENCE_HEADER, String.valueOf(until));
+        // Deletions first, so that an item deleted and then created again is kept
+        try (Stream<WhitelistItemChange> deletions = since != null ?
+                whitelistService.streamTombstones(branch, includeDescendants, since, until).map(WhitelistItemChange::delete) : Stream.empty();
+             Stream<WhitelistItemChange> upserts = whitelistService.streamChangedItems(branch, includeDescendants, since, until).map(WhitelistItemChange::upsert);
+             SequenceWriter writer = whitelistItemChangeWriter.writeValues(response.getOutputStream())) {
+            Iterator<WhitelistItemChange> iterator = Stream.concat(deletions, upserts).iterator();
+            while (iterator.hasNext()) {
+                writer.write(iterator.next());
+            }
+        }
     }
 }
@@ -0,0 +1,43 @@
+package org.snomed.aag.rest.pojo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of creating a single whitelist item in bulk.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WhitelistItemBulkResult {
+
+	public enum Status {
+		CREATED, ALREADY_PRESENT, INVALID
+	}
+
+	// Position of the item in the request
+	private final int index;
+	private final String id;
+	private final Status status;
+	private final String error;
+
+	public WhitelistItemBulkResult(int index, String id, Status status, String error) {
+		this.index = index;
+		this.id = id;
+		this.status = status;
+		this.error = error;
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Status getStatus() {
+		return status;
+	}
+
+	public String getError() {
+		return error;
+	}
+}
@@ -0,0 +1,52 @@
+package org.snomed.aag.rest.pojo;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import org.snomed.aag.data.domain.WhitelistItem;
+import org.snomed.aag.data.domain.WhitelistItemTombstone;
+
+/**
+ * Single entry of the whitelist change feed, either the current state of a created or updated item or the deletion of an item.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WhitelistItemChange {
+
+	public enum Type {
+		UPSERT, DELETE
+	}
+
+	private final Type type;
+	private final String id;
+	private final Long sequence;
+	private final WhitelistItem item;
+
+	private WhitelistItemChange(Type type, String id, Long sequence, WhitelistItem item) {
+		this.type = type;
+		this.id = id;
+		this.sequence = sequence;
+		this.item = item;
+	}
+
+	public static WhitelistItemChange upsert(WhitelistItem whitelistItem) {
+		return new WhitelistItemChange(Type.UPSERT, whitelistItem.getId(), whitelistItem.getLastModified(), whitelistItem);
+	}
+
+	public static WhitelistItemChange delete(WhitelistItemTombstone tombstone) {
+		return new WhitelistItemChange(Type.DELETE, tombstone.getId(), tombstone.getDeletionDate(), null);
+	}
+
+	public Type getType() {
+		return type;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public Long getSequence() {
+		return sequence;
+	}
+
+	public WhitelistItem getItem() {
+		return item;
+	}
+}
@@ -0,0 +1,31 @@
+package org.snomed.aag.rest.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.snomed.aag.data.services.BranchRequestScope;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Opens a {@link BranchRequestScope} for each HTTP request so that a Branch is fetched from Snowstorm
+ * at most once, regardless of how many controllers, services and permission checks ask for it.
+ */
+@Component
+public class BranchRequestScopeFilter extends OncePerRequestFilter {
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+		boolean opened = BranchRequestScope.open();
+		try {
+			filterChain.doFilter(request, response);
+		} finally {
+			if (opened) {
+				BranchRequestScope.close();
+			}
+		}
+	}
+}
@@ -1,5 +1,8 @@
 package org.snomed.aag.rest.util;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class BranchPathUtil {
 
     private BranchPathUtil() {
@@ -12,4 +15,15 @@ public class BranchPathUtil {
             return "SNOMEDCT";
         }
     }
+
+    public static List<String> getAncestorPaths(String branch) {
+        List<String> ancestorPaths = new ArrayList<>();
+        String parentPath = PathUtil.getParentPath(branch);
+        while (parentPath != null) {
+            ancestorPaths.add(0, parentPath);
+            parentPath = PathUtil.getParentPath(parentPath);
+        }
+
+        return ancestorPaths;
+    }
 }
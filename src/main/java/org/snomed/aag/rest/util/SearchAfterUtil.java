@@ -0,0 +1,38 @@
+package org.snomed.aag.rest.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Converts the sort values of a (creationDate, id) ordered search to an opaque cursor and back.
+ */
+public class SearchAfterUtil {
+    private static final String SEPARATOR = "|";
+
+    private SearchAfterUtil() {
+    }
+
+    public static String toToken(List<Object> sortValues) {
+        if (sortValues == null || sortValues.size() != 2) {
+            return null;
+        }
+
+        String value = sortValues.get(0) + SEPARATOR + sortValues.get(1);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static List<Object> fromToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int indexOf = value.indexOf(SEPARATOR);
+            return List.of(Long.parseLong(value.substring(0, indexOf)), value.substring(indexOf + 1));
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid searchAfter: " + token);
+        }
+    }
+}
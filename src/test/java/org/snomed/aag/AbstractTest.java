@@ -7,15 +7,19 @@ import org.ihtsdo.otf.rest.client.RestClientException;
 import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Branch;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.snomed.aag.data.domain.AcceptanceStatus;
+import org.snomed.aag.data.repositories.AcceptanceStatusRepository;
 import org.snomed.aag.data.repositories.CriteriaItemRepository;
 import org.snomed.aag.data.repositories.CriteriaItemSignOffRepository;
 import org.snomed.aag.data.repositories.ProjectAcceptanceCriteriaRepository;
 import org.snomed.aag.data.repositories.WhitelistItemRepository;
+import org.snomed.aag.data.repositories.WhitelistItemTombstoneRepository;
 import org.snomed.aag.data.services.*;
 import org.snomed.aag.data.validators.CommitInformationValidator;
 import org.snomed.aag.data.validators.ProjectAcceptanceCriteriaUpdateValidator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.core.Authentication;
@@ -55,9 +59,18 @@ public abstract class AbstractTest {
 	@Autowired
 	protected WhitelistItemRepository whitelistItemRepository;
 
+	@Autowired
+	protected WhitelistItemTombstoneRepository whitelistItemTombstoneRepository;
+
 	@Autowired
 	protected ProjectAcceptanceCriteriaRepository projectAcceptanceCriteriaRepository;
 
+	@Autowired
+	protected AcceptanceStatusRepository acceptanceStatusRepository;
+
+	@Autowired
+	protected ElasticsearchTemplate elasticsearchTemplate;
+
 	@Autowired
 	protected CriteriaItemService criteriaItemService;
 
@@ -76,6 +89,30 @@ public abstract class AbstractTest {
 	@Autowired
 	protected AcceptanceService acceptanceService;
 
+	@Autowired
+	protected AcceptanceStatusService acceptanceStatusService;
+
+	@Autowired
+	protected IndexMigrationService indexMigrationService;
+
+	@Autowired
+	protected CommitProcessingLanes commitProcessingLanes;
+
+	@Autowired
+	protected CommitQueueService commitQueueService;
+
+	@Autowired
+	protected CommitLedger commitLedger;
+
+	@Autowired
+	protected ValidationProcessingExecutor validationProcessingExecutor;
+
+	@Autowired
+	protected ValidationProcessingService validationProcessingService;
+
+	@Autowired
+	protected MaintenanceTaskService maintenanceTaskService;
+
 	@Autowired
 	protected CommitInformationValidator commitInformationValidator;
 
@@ -91,10 +128,16 @@ public abstract class AbstractTest {
 		criteriaItemSignOffRepository.deleteAll();
 		projectAcceptanceCriteriaRepository.deleteAll();
 		whitelistItemRepository.deleteAll();
+		whitelistItemTombstoneRepository.deleteAll();
+		commitLedger.clear();
+		// Statuses are written without refresh
+		elasticsearchTemplate.indexOps(AcceptanceStatus.class).refresh();
+		acceptanceStatusRepository.deleteAll();
 	}
 
 	protected void givenBranchDoesNotExist() throws RestClientException {
 		doThrow(new AccessDeniedException("Branch does not exist.")).when(securityService).verifyBranchRole(any(), any());
+		doThrow(new AccessDeniedException("Branch does not exist.")).when(securityService).verifyBranchRoles(any(), any());
 		when(securityService.currentUserHasRoleOnBranch(any(), any())).thenThrow(new AccessDeniedException("Branch does not exist."));
 		when(securityService.getBranchOrThrow(any())).thenThrow(new AccessDeniedException("Branch does not exist."));
 	}
@@ -135,6 +178,7 @@ public abstract class AbstractTest {
 
 	protected void givenUserDoesNotHavePermissionForBranch() {
 		doThrow(new AccessDeniedException("User does not have desired role.")).when(securityService).verifyBranchRole(any(), any());
+		doThrow(new AccessDeniedException("User does not have desired role.")).when(securityService).verifyBranchRoles(any(), any());
 	}
 
 	protected void givenUserDoesHavePermissionForBranch() throws RestClientException {
@@ -0,0 +1,153 @@
+package org.snomed.aag.data.client;
+
+import org.ihtsdo.otf.rest.client.RestClientException;
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Branch;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+
+import java.net.ConnectException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SnowstormCircuitBreakerTest {
+
+	@Test
+	void call_ShouldOpenCircuit_WhenSnowstormIsSlow() throws RestClientException {
+		// given
+		SnowstormCircuitBreaker circuitBreaker = new SnowstormCircuitBreaker(2, 50, 60, 10, 100);
+		StubSnowstorm snowstorm = new StubSnowstorm(100);
+
+		// when
+		circuitBreaker.call(snowstorm::getBranch);
+		circuitBreaker.call(snowstorm::getBranch);
+
+		// then
+		assertEquals(SnowstormCircuitBreaker.State.OPEN, circuitBreaker.getState());
+		assertThrows(SnowstormCircuitBreaker.CallNotPermittedException.class, () -> circuitBreaker.call(snowstorm::getBranch));
+		assertEquals(2, snowstorm.calls.get());
+		assertEquals(1, circuitBreaker.getRejectedCount());
+	}
+
+	@Test
+	void call_ShouldOpenCircuit_WhenSnowstormFails() {
+		// given
+		SnowstormCircuitBreaker circuitBreaker = new SnowstormCircuitBreaker(2, 1_000, 60, 10, 100);
+		SnowstormCircuitBreaker.SnowstormCall<Branch> failingCall = () -> {
+			throw new RestClientException("Connection refused", new ConnectException("Connection refused"));
+		};
+
+		// when
+		assertThrows(RestClientException.class, () -> circuitBreaker.call(failingCall));
+		assertEquals(SnowstormCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+		assertThrows(RestClientException.class, () -> circuitBreaker.call(failingCall));
+
+		// then
+		assertEquals(SnowstormCircuitBreaker.State.OPEN, circuitBreaker.getState());
+	}
+
+	@Test
+	void call_ShouldOpenCircuit_WhenSnowstormReturnsServerError() {
+		// given
+		SnowstormCircuitBreaker circuitBreaker = new SnowstormCircuitBreaker(1, 1_000, 60, 10, 100);
+
+		// when
+		assertThrows(HttpServerErrorException.class, () -> circuitBreaker.call(() -> {
+			throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE);
+		}));
+
+		// then
+		assertEquals(SnowstormCircuitBreaker.State.OPEN, circuitBreaker.getState());
+	}
+
+	@Test
+	void call_ShouldKeepCircuitClosed_WhenSnowstormReturnsClientError() {
+		// given
+		SnowstormCircuitBreaker circuitBreaker = new SnowstormCircuitBreaker(1, 1_000, 60, 10, 100);
+		SnowstormCircuitBreaker.SnowstormCall<Branch> notFoundCall = () -> {
+			throw new RestClientException("Branch not found", new HttpClientErrorException(HttpStatus.NOT_FOUND));
+		};
+
+		// when
+		assertThrows(RestClientException.class, () -> circuitBreaker.call(notFoundCall));
+		assertThrows(RestClientException.class, () -> circuitBreaker.call(notFoundCall));
+
+		// then
+		assertEquals(SnowstormCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+	}
+
+	@Test
+	void call_ShouldCloseCircuit_WhenTrialCallSucceeds() throws Exception {
+		// given
+		SnowstormCircuitBreaker circuitBreaker = new SnowstormCircuitBreaker(1, 50, 0, 10, 100);
+		StubSnowstorm snowstorm = new StubSnowstorm(100);
+		circuitBreaker.call(snowstorm::getBranch);
+		assertEquals(SnowstormCircuitBreaker.State.HALF_OPEN, circuitBreaker.getState());
+
+		// when
+		snowstorm.latencyMillis = 0;
+		Branch branch = circuitBreaker.call(snowstorm::getBranch);
+
+		// then
+		assertNotNull(branch);
+		assertEquals(SnowstormCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+	}
+
+	@Test
+	void call_ShouldRejectCall_WhenBulkheadIsFull() throws Exception {
+		// given
+		SnowstormCircuitBreaker circuitBreaker = new SnowstormCircuitBreaker(5, 10_000, 60, 1, 10);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executorService = Executors.newSingleThreadExecutor();
+		try {
+			Future<Branch> blocked = executorService.submit(() -> circuitBreaker.call(() -> {
+				started.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return new Branch();
+			}));
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			// when
+			assertThrows(SnowstormCircuitBreaker.CallNotPermittedException.class, () -> circuitBreaker.call(Branch::new));
+
+			// then
+			release.countDown();
+			assertNotNull(blocked.get(5, TimeUnit.SECONDS));
+			assertEquals(SnowstormCircuitBreaker.State.CLOSED, circuitBreaker.getState());
+			assertNotNull(circuitBreaker.call(Branch::new));
+		} finally {
+			executorService.shutdownNow();
+		}
+	}
+
+	private static class StubSnowstorm {
+		private final AtomicInteger calls = new AtomicInteger();
+		private volatile long latencyMillis;
+
+		private StubSnowstorm(long latencyMillis) {
+			this.latencyMillis = latencyMillis;
+		}
+
+		private Branch getBranch() {
+			calls.incrementAndGet();
+			try {
+				Thread.sleep(latencyMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return new Branch();
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package org.snomed.aag.data.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AcceptanceStatusTest {
+
+	@Test
+	void getSignedOffItemIds_ShouldOnlyReturnMatchingIteration_WhenProjectIterationGiven() {
+		// given
+		AcceptanceStatus acceptanceStatus = new AcceptanceStatus("MAIN/projectA", Set.of(
+				AcceptanceStatus.toKey("project-manual-a", 1),
+				AcceptanceStatus.toKey("project-manual-b", 2)), false);
+
+		// when
+		Set<String> signedOffItemIds = acceptanceStatus.getSignedOffItemIds(2);
+
+		// then
+		assertEquals(Set.of("project-manual-b"), signedOffItemIds);
+	}
+
+	@Test
+	void getSignedOffItemIds_ShouldReturnAllItems_WhenNoProjectIterationGiven() {
+		// given
+		AcceptanceStatus acceptanceStatus = new AcceptanceStatus("MAIN/projectA/taskA", Set.of(
+				AcceptanceStatus.toKey("task-manual-a", null),
+				AcceptanceStatus.toKey("task-manual-b", 3)), false);
+
+		// when
+		Set<String> signedOffItemIds = acceptanceStatus.getSignedOffItemIds(null);
+
+		// then
+		assertEquals(Set.of("task-manual-a", "task-manual-b"), signedOffItemIds);
+	}
+}
@@ -1,6 +1,11 @@
 package org.snomed.aag.data.services;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.jms.TextMessage;
+import org.apache.activemq.command.ActiveMQTextMessage;
 import org.ihtsdo.otf.rest.client.RestClientException;
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Branch;
+import org.ihtsdo.sso.integration.SecurityUtil;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.snomed.aag.AbstractTest;
@@ -9,13 +14,21 @@ import org.snomed.aag.data.domain.CriteriaItem;
 import org.snomed.aag.data.domain.ProjectAcceptanceCriteria;
 import org.snomed.aag.data.pojo.CommitInformation;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.context.SecurityContextHolder;
 
+import java.util.Collections;
 import java.util.Date;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.when;
 import static org.snomed.aag.data.domain.CriteriaItem.PROJECT_CLASSIFICATION_CLEAN;
 import static org.snomed.aag.data.domain.CriteriaItem.TASK_CLASSIFICATION_CLEAN;
 
@@ -30,6 +43,9 @@ class AcceptanceServiceTest extends AbstractTest {
 	@Autowired
 	private AcceptanceService acceptanceService;
 
+	@Autowired
+	private ObjectMapper objectMapper;
+
 	@BeforeEach
 	void setup() {
 		criteriaItemService.create(new CriteriaItem(CriteriaItem.PROJECT_CLASSIFICATION_CLEAN, AuthoringLevel.PROJECT, true, false, true));
@@ -83,4 +99,103 @@ class AcceptanceServiceTest extends AbstractTest {
 		assertFalse(items.get(PROJECT_CLASSIFICATION_CLEAN).isComplete(), "project classification is not complete");
 
 	}
+
+	@Test
+	void testProcessCommitSkipsDuplicateCommit() throws RestClientException {
+		givenBranchDoesExist();
+		// Ledger statistics are shared by all tests
+		final long duplicateSkipCount = getLedgerCount("duplicateSkipCount");
+		final long outOfOrderSkipCount = getLedgerCount("outOfOrderSkipCount");
+		final long recordedCount = getLedgerCount("recordedCount");
+		final String taskBranch = "MAIN/A/A-10";
+		final ProjectAcceptanceCriteria acceptanceCriteria = criteriaService.findByBranchPathWithRelevantCriteriaItems(taskBranch, true);
+		final CommitInformation commit = new CommitInformation(taskBranch, CommitInformation.CommitType.CONTENT, 10L, Map.of(CommitInformation.INTERNAL,
+				Map.of(CommitInformation.CLASSIFIED, "true")));
+		acceptanceService.processCommit(commit);
+		assertTrue(isComplete(acceptanceCriteria, taskBranch, TASK_CLASSIFICATION_CLEAN), "task classification is complete");
+
+		// Sign-off removed after the commit was processed, so only a second processing could accept it again
+		criteriaItemSignOffRepository.deleteAll();
+		acceptanceService.processCommit(commit);
+
+		assertFalse(isComplete(acceptanceCriteria, taskBranch, TASK_CLASSIFICATION_CLEAN), "duplicate commit not processed");
+		assertEquals(duplicateSkipCount + 1, getLedgerCount("duplicateSkipCount"));
+		assertEquals(recordedCount + 1, getLedgerCount("recordedCount"));
+
+		// Older commit delivered late
+		acceptanceService.processCommit(new CommitInformation(taskBranch, CommitInformation.CommitType.CONTENT, 5L, Map.of(CommitInformation.INTERNAL,
+				Map.of(CommitInformation.CLASSIFIED, "true"))));
+
+		assertFalse(isComplete(acceptanceCriteria, taskBranch, TASK_CLASSIFICATION_CLEAN), "older commit not processed");
+		assertEquals(outOfOrderSkipCount + 1, getLedgerCount("outOfOrderSkipCount"));
+	}
+
+	@Test
+	void testProcessCommitDoesNotRecordFailedCommit() throws RestClientException {
+		givenBranchDoesNotExist();
+		final long duplicateSkipCount = getLedgerCount("duplicateSkipCount");
+		final long recordedCount = getLedgerCount("recordedCount");
+		final String taskBranch = "MAIN/A/A-10";
+		final CommitInformation commit = new CommitInformation(taskBranch, CommitInformation.CommitType.CONTENT, 10L, Map.of(CommitInformation.INTERNAL,
+				Map.of(CommitInformation.CLASSIFIED, "true")));
+
+		assertThrows(AccessDeniedException.class, () -> acceptanceService.processCommit(commit));
+		assertEquals(recordedCount, getLedgerCount("recordedCount"));
+
+		// Redelivered once the branch can be read
+		reset(securityService);
+		givenBranchDoesExist();
+		acceptanceService.processCommit(commit);
+
+		final ProjectAcceptanceCriteria acceptanceCriteria = criteriaService.findByBranchPathWithRelevantCriteriaItems(taskBranch, true);
+		assertTrue(isComplete(acceptanceCriteria, taskBranch, TASK_CLASSIFICATION_CLEAN), "redelivered commit processed");
+		assertEquals(duplicateSkipCount, getLedgerCount("duplicateSkipCount"));
+		assertEquals(recordedCount + 1, getLedgerCount("recordedCount"));
+	}
+
+	@Test
+	void testProcessQueuedCommit() throws Exception {
+		final CriteriaItem projectClassification = criteriaItemService.findByIdOrThrow(PROJECT_CLASSIFICATION_CLEAN);
+		projectClassification.setRequiredRoles(Set.of("AUTHOR"));
+		criteriaItemService.update(projectClassification);
+		final Branch branch = new Branch();
+		branch.setHeadTimestamp(10L);
+		final Set<String> tokens = ConcurrentHashMap.newKeySet();
+		when(securityService.getBranchOrThrow(any())).thenAnswer(invocation -> {
+			tokens.add(String.valueOf(SecurityUtil.getAuthenticationToken()));
+			return branch;
+		});
+		// The service account has every role, which must not be taken as the roles of the user
+		when(securityService.findUnsatisfiedRoleSets(any(), any())).thenReturn(Collections.emptySet());
+		final String projectBranch = "MAIN/A";
+		final String taskBranch = projectBranch + "/A-10";
+
+		commitQueueService.consume(givenQueuedCommit(new CommitInformation(taskBranch, CommitInformation.CommitType.CONTENT, 10L, Map.of(CommitInformation.INTERNAL,
+				Map.of(CommitInformation.CLASSIFIED, "true")))));
+		commitQueueService.consume(givenQueuedCommit(new CommitInformation(projectBranch, CommitInformation.CommitType.CONTENT, 10L, Map.of(CommitInformation.INTERNAL,
+				Map.of(CommitInformation.CLASSIFIED, "true")))));
+
+		final ProjectAcceptanceCriteria acceptanceCriteria = criteriaService.findByBranchPathWithRelevantCriteriaItems(taskBranch, true);
+		assertTrue(isComplete(acceptanceCriteria, taskBranch, TASK_CLASSIFICATION_CLEAN), "task classification is complete");
+		assertFalse(isComplete(acceptanceCriteria, projectBranch, PROJECT_CLASSIFICATION_CLEAN), "project classification requires a role of the user");
+		assertEquals(Set.of("test-service-token"), tokens);
+		assertNull(SecurityContextHolder.getContext().getAuthentication());
+	}
+
+	private TextMessage givenQueuedCommit(CommitInformation commitInformation) throws Exception {
+		final ActiveMQTextMessage message = new ActiveMQTextMessage();
+		message.setText(objectMapper.writeValueAsString(commitInformation));
+		message.setStringProperty(CommitQueueService.USERNAME_PROPERTY, "user");
+		return message;
+	}
+
+	private long getLedgerCount(String name) {
+		return (long) commitLedger.getStats().get(name);
+	}
+
+	private boolean isComplete(ProjectAcceptanceCriteria acceptanceCriteria, String branchPath, String itemId) {
+		return criteriaService.findItemsAndMarkSignOff(acceptanceCriteria, branchPath).stream()
+				.filter(item -> itemId.equals(item.getId()))
+				.anyMatch(CriteriaItem::isComplete);
+	}
 }
@@ -0,0 +1,63 @@
+package org.snomed.aag.data.services;
+
+import org.junit.jupiter.api.Test;
+import org.snomed.aag.AbstractTest;
+import org.snomed.aag.data.domain.AcceptanceStatus;
+import org.snomed.aag.data.domain.CriteriaItemSignOff;
+import org.snomed.aag.data.domain.ProjectAcceptanceCriteria;
+import org.springframework.data.elasticsearch.core.RefreshPolicy;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AcceptanceStatusServiceTest extends AbstractTest {
+
+	@Test
+	void findSignedOffItemIds_ShouldIncludeSignOff_WhenSignOffWrittenWithoutRefresh() {
+		// given
+		CriteriaItemSignOff signOff = new CriteriaItemSignOff("task-classification-clean", "MAIN/projectA/taskA", 1L, null, "user");
+		elasticsearchTemplate.withRefreshPolicy(RefreshPolicy.NONE).save(signOff);
+		acceptanceStatusService.addSignOffs("MAIN/projectA/taskA", List.of(signOff));
+
+		// when
+		Set<String> result = acceptanceStatusService.findSignedOffItemIds("MAIN/projectA/taskA", null);
+
+		// then
+		assertEquals(Set.of("task-classification-clean"), result);
+	}
+
+	@Test
+	void findSignedOffItemIds_ShouldNotIncludeSignOff_WhenDeletedWithoutRefresh() {
+		// given
+		CriteriaItemSignOff signOff = new CriteriaItemSignOff("task-classification-clean", "MAIN/projectA/taskA", 1L, null, "user");
+		elasticsearchTemplate.withRefreshPolicy(RefreshPolicy.IMMEDIATE).save(signOff);
+		elasticsearchTemplate.withRefreshPolicy(RefreshPolicy.NONE).delete(signOff);
+		acceptanceStatusService.removeSignOffs("MAIN/projectA/taskA", List.of("task-classification-clean"), null);
+
+		// when
+		Set<String> result = acceptanceStatusService.findSignedOffItemIds("MAIN/projectA/taskA", null);
+
+		// then
+		assertEquals(Set.of(), result);
+	}
+
+	@Test
+	void findSignedOffItemIds_ShouldNotIncludeDeletedSignOff_WhenStatusUpdateFails() {
+		// given
+		CriteriaItemSignOff signOff = new CriteriaItemSignOff("task-classification-clean", "MAIN/projectA/taskA", 1L, null, "user");
+		elasticsearchTemplate.withRefreshPolicy(RefreshPolicy.IMMEDIATE).save(signOff);
+		// A key without a separator fails the update script once the sign-off has been deleted
+		elasticsearchTemplate.save(new AcceptanceStatus("MAIN/projectA/taskA", Set.of(AcceptanceStatus.toKey("task-classification-clean", null), "corrupt"), false));
+
+		// when
+		assertThrows(RuntimeException.class, () -> criteriaItemSignOffService.deleteFrom(Set.of("task-classification-clean"), "MAIN/projectA/taskA", 1,
+				new ProjectAcceptanceCriteria("MAIN/projectA", 1), false));
+
+		// then
+		assertEquals(0, criteriaItemSignOffRepository.count());
+		assertEquals(Set.of(), acceptanceStatusService.findSignedOffItemIds("MAIN/projectA/taskA", null));
+	}
+}
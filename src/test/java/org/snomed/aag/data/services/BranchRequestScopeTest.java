@@ -0,0 +1,45 @@
+package org.snomed.aag.data.services;
+
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Branch;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BranchRequestScopeTest {
+
+	@Test
+	void get_ShouldReturnNull_WhenNoScopeOpen() {
+		BranchRequestScope.put("MAIN", new Branch());
+
+		assertNull(BranchRequestScope.get("MAIN"));
+	}
+
+	@Test
+	void get_ShouldReturnMemoizedBranch_WhenWithinScope() {
+		Branch branch = new Branch();
+
+		BranchRequestScope.run(() -> {
+			BranchRequestScope.put("MAIN/projectA", branch);
+
+			assertSame(branch, BranchRequestScope.get("MAIN/projectA"));
+			assertNull(BranchRequestScope.get("MAIN"));
+		});
+
+		assertNull(BranchRequestScope.get("MAIN/projectA"));
+	}
+
+	@Test
+	void run_ShouldReuseOuterScope_WhenNested() {
+		Branch branch = new Branch();
+
+		BranchRequestScope.run(() -> {
+			BranchRequestScope.run(() -> BranchRequestScope.put("MAIN", branch));
+
+			assertSame(branch, BranchRequestScope.get("MAIN"));
+			assertFalse(BranchRequestScope.open());
+		});
+
+		assertTrue(BranchRequestScope.open());
+		BranchRequestScope.close();
+	}
+}
@@ -0,0 +1,255 @@
+package org.snomed.aag.data.services;
+
+import com.google.common.base.Ticker;
+import org.ihtsdo.otf.rest.client.RestClientException;
+import org.ihtsdo.otf.rest.client.terminologyserver.SnowstormRestClient;
+import org.ihtsdo.otf.rest.client.terminologyserver.SnowstormRestClientFactory;
+import org.ihtsdo.otf.rest.client.terminologyserver.pojo.Branch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.aag.data.client.SnowstormCircuitBreaker;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class BranchSecurityServiceTest {
+	private static final long TTL_SECONDS = 60;
+
+	private final FakeTicker ticker = new FakeTicker();
+	private final SnowstormRestClient snowstormRestClient = mock(SnowstormRestClient.class);
+	private BranchSecurityService branchSecurityService;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		SnowstormRestClientFactory snowstormRestClientFactory = mock(SnowstormRestClientFactory.class);
+		when(snowstormRestClientFactory.getClient()).thenReturn(snowstormRestClient);
+		branchSecurityService = new BranchSecurityService(snowstormRestClientFactory, 100, TTL_SECONDS, 600, Set.of(),
+				new SnowstormCircuitBreaker(5, 10_000, 60, 10, 100), ticker);
+		givenAuthenticatedUser("user-a", "token-a");
+	}
+
+	@AfterEach
+	void tearDown() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void getBranchOrThrow_ShouldFetchBranchOnce_WhenSameUserRequestsBranchAgain() throws RestClientException {
+		// given
+		givenBranch("MAIN/projectA", 10L);
+
+		// when
+		branchSecurityService.getBranchOrThrow("MAIN/projectA");
+		branchSecurityService.getBranchOrThrow("MAIN/projectA");
+
+		// then
+		verify(snowstormRestClient, times(1)).getBranch("MAIN/projectA");
+	}
+
+	@Test
+	void getBranchOrThrow_ShouldFetchBranchPerUser_WhenUsersHaveDifferentTokens() throws RestClientException {
+		// given
+		Branch branchOfUserA = givenBranch("MAIN/projectA", 10L, "AUTHOR");
+		branchSecurityService.getBranchOrThrow("MAIN/projectA");
+		Branch branchOfUserB = givenBranch("MAIN/projectA", 10L, "REVIEWER");
+		givenAuthenticatedUser("user-b", "token-b");
+
+		// when
+		Branch result = branchSecurityService.getBranchOrThrow("MAIN/projectA");
+
+		// then
+		assertSame(branchOfUserB, result);
+		givenAuthenticatedUser("user-a", "token-a");
+		assertSame(branchOfUserA, branchSecurityService.getBranchOrThrow("MAIN/projectA"));
+		verify(snowstormRestClient, times(2)).getBranch("MAIN/projectA");
+	}
+
+	@Test
+	void getBranchOrThrow_ShouldFetchBranchAgain_WhenCachedBranchExpired() throws RestClientException {
+		// given
+		givenBranch("MAIN/projectA", 10L);
+		branchSecurityService.getBranchOrThrow("MAIN/projectA");
+		ticker.advance(TTL_SECONDS - 1, TimeUnit.SECONDS);
+		branchSecurityService.getBranchOrThrow("MAIN/projectA");
+
+		// when
+		ticker.advance(2, TimeUnit.SECONDS);
+		branchSecurityService.getBranchOrThrow("MAIN/projectA");
+
+		// then
+		verify(snowstormRestClient, times(2)).getBranch("MAIN/projectA");
+	}
+
+	@Test
+	void invalidateBranchCache_ShouldEvictBranch_WhenHeadTimeDiffers() throws RestClientException {
+		// given
+		givenBranch("MAIN/projectA", 10L);
+		branchSecurityService.getBranchOrThrow("MAIN/projectA");
+
+		// when
+		branchSecurityService.invalidateBranchCache("MAIN/projectA", 20L);
+		branchSecurityService.getBranchOrThrow("MAIN/projectA");
+
+		// then
+		verify(snowstormRestClient, times(2)).getBranch("MAIN/projectA");
+	}
+
+	@Test
+	void invalidateBranchCache_ShouldKeepBranch_WhenHeadTimeMatches() throws RestClientException {
+		// given
+		givenBranch("MAIN/projectA", 10L);
+		branchSecurityService.getBranchOrThrow("MAIN/projectA");
+
+		// when
+		branchSecurityService.invalidateBranchCache("MAIN/projectA", 10L);
+		branchSecurityService.getBranchOrThrow("MAIN/projectA");
+
+		// then
+		verify(snowstormRestClient, times(1)).getBranch("MAIN/projectA");
+	}
+
+	@Test
+	void invalidateBranchCache_ShouldEvictDescendantsButNotSiblings_WhenBranchChanged() throws RestClientException {
+		// given
+		givenBranch("MAIN/A", 10L);
+		givenBranch("MAIN/A/task", 10L);
+		givenBranch("MAIN/AB", 10L);
+		for (String branchPath : Set.of("MAIN/A", "MAIN/A/task", "MAIN/AB")) {
+			branchSecurityService.getBranchOrThrow(branchPath);
+		}
+
+		// when
+		branchSecurityService.invalidateBranchCache("MAIN/A", 10L);
+		for (String branchPath : Set.of("MAIN/A", "MAIN/A/task", "MAIN/AB")) {
+			branchSecurityService.getBranchOrThrow(branchPath);
+		}
+
+		// then
+		verify(snowstormRestClient, times(1)).getBranch("MAIN/A");
+		verify(snowstormRestClient, times(2)).getBranch("MAIN/A/task");
+		verify(snowstormRestClient, times(1)).getBranch("MAIN/AB");
+	}
+
+	@Test
+	void getBranchCacheStats_ShouldCountHitsMissesAndInvalidations() throws RestClientException {
+		// given
+		givenBranch("MAIN/projectA", 10L);
+		givenBranch("MAIN/projectA/taskB", 10L);
+		branchSecurityService.getBranchOrThrow("MAIN/projectA");
+		branchSecurityService.getBranchOrThrow("MAIN/projectA");
+		branchSecurityService.getBranchOrThrow("MAIN/projectA/taskB");
+
+		// when
+		branchSecurityService.invalidateBranchCache("MAIN/projectA", 20L);
+		Map<String, Object> stats = branchSecurityService.getBranchCacheStats();
+
+		// then
+		assertEquals(0L, stats.get("size"));
+		assertEquals(1L, stats.get("hitCount"));
+		assertEquals(2L, stats.get("missCount"));
+		assertEquals(2L, stats.get("commitInvalidationCount"));
+		assertEquals(0L, stats.get("staleServedCount"));
+	}
+
+	@Test
+	void verifyBranchRoles_ShouldFetchBranchOnce_WhenGivenSeveralRoleSets() throws RestClientException {
+		// given
+		givenBranch("MAIN/projectA", 10L, "AUTHOR", "REVIEWER");
+
+		// when
+		branchSecurityService.verifyBranchRoles("MAIN/projectA", List.of(Set.of("AUTHOR"), Set.of("REVIEWER", "ADMIN"), Set.of("AUTHOR", "PROJECT_LEAD")));
+
+		// then
+		verify(snowstormRestClient, times(1)).getBranch("MAIN/projectA");
+	}
+
+	@Test
+	void verifyBranchRoles_ShouldThrowAccessDenied_WhenUserLacksRolesOfOneSet() throws RestClientException {
+		// given
+		givenBranch("MAIN/projectA", 10L, "AUTHOR");
+
+		// when
+		AccessDeniedException exception = assertThrows(AccessDeniedException.class,
+				() -> branchSecurityService.verifyBranchRoles("MAIN/projectA", List.of(Set.of("AUTHOR"), Set.of("REVIEWER"))));
+
+		// then
+		assertEquals("User does not have desired role.", exception.getMessage());
+	}
+
+	@Test
+	void findUnsatisfiedRoleSets_ShouldReturnEmptyRoleSet_WhenUserHasRoles() throws RestClientException {
+		// given
+		givenBranch("MAIN/projectA", 10L, "AUTHOR");
+
+		// when
+		Set<Set<String>> result = branchSecurityService.findUnsatisfiedRoleSets("MAIN/projectA", List.of(Set.of(), Set.of("AUTHOR")));
+
+		// then
+		assertEquals(Set.of(Set.of()), result);
+	}
+
+	@Test
+	void findUnsatisfiedRoleSets_ShouldUseGlobalRolesOfMain_WhenBranchIsGlobal() throws RestClientException {
+		// given
+		Branch main = givenBranch("MAIN", 10L, "AUTHOR");
+		main.setGlobalUserRoles(Set.of("ADMIN"));
+
+		// when
+		Set<Set<String>> result = branchSecurityService.findUnsatisfiedRoleSets("global", List.of(Set.of("ADMIN"), Set.of("AUTHOR")));
+
+		// then
+		assertEquals(Set.of(Set.of("AUTHOR")), result);
+		verify(snowstormRestClient, times(1)).getBranch("MAIN");
+		verify(snowstormRestClient, never()).getBranch("global");
+	}
+
+	@Test
+	void verifyBranchRoles_ShouldThrowAccessDenied_WhenSnowstormFails() throws RestClientException {
+		// given
+		when(snowstormRestClient.getBranch("MAIN/projectA")).thenThrow(new RestClientException("Snowstorm failed."));
+
+		// when
+		AccessDeniedException exception = assertThrows(AccessDeniedException.class,
+				() -> branchSecurityService.verifyBranchRoles("MAIN/projectA", List.of(Set.of("AUTHOR"))));
+
+		// then
+		assertInstanceOf(RestClientException.class, exception.getCause());
+	}
+
+	private Branch givenBranch(String branchPath, long headTimestamp, String... userRoles) throws RestClientException {
+		Branch branch = new Branch();
+		branch.setPath(branchPath);
+		branch.setHeadTimestamp(headTimestamp);
+		branch.setUserRoles(Set.of(userRoles));
+		when(snowstormRestClient.getBranch(branchPath)).thenReturn(branch);
+		return branch;
+	}
+
+	private void givenAuthenticatedUser(String username, String token) {
+		SecurityContextHolder.getContext().setAuthentication(new PreAuthenticatedAuthenticationToken(username, token, AuthorityUtils.NO_AUTHORITIES));
+	}
+
+	private static class FakeTicker extends Ticker {
+		private final AtomicLong nanos = new AtomicLong();
+
+		@Override
+		public long read() {
+			return nanos.get();
+		}
+
+		void advance(long duration, TimeUnit unit) {
+			nanos.addAndGet(unit.toNanos(duration));
+		}
+	}
+}
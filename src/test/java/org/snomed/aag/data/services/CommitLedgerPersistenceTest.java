@@ -0,0 +1,81 @@
+package org.snomed.aag.data.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.aag.AbstractTest;
+import org.snomed.aag.data.domain.ProcessedCommit;
+import org.snomed.aag.data.repositories.ProcessedCommitRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommitLedgerPersistenceTest extends AbstractTest {
+
+	@Autowired
+	private ProcessedCommitRepository processedCommitRepository;
+
+	@AfterEach
+	void tearDown() {
+		processedCommitRepository.deleteAll();
+	}
+
+	@Test
+	void record_ShouldStoreNewestCommit_WhenPersistent() {
+		// given
+		CommitLedger commitLedger = new CommitLedger(processedCommitRepository, elasticsearchTemplate, 100, true);
+
+		// when
+		commitLedger.record("MAIN/projectA", 20L);
+		commitLedger.record("MAIN/projectA", 10L);
+
+		// then
+		Optional<ProcessedCommit> processedCommit = processedCommitRepository.findById("MAIN/projectA");
+		assertTrue(processedCommit.isPresent());
+		assertEquals(20L, processedCommit.get().getHeadTime());
+	}
+
+	@Test
+	void record_ShouldKeepNewestCommit_WhenOlderCommitRecordedByAnotherInstance() {
+		// given
+		new CommitLedger(processedCommitRepository, elasticsearchTemplate, 100, true).record("MAIN/projectA", 20L);
+		CommitLedger commitLedger = new CommitLedger(processedCommitRepository, elasticsearchTemplate, 100, true);
+
+		// when
+		commitLedger.record("MAIN/projectA", 10L);
+
+		// then
+		assertEquals(20L, processedCommitRepository.findById("MAIN/projectA").orElseThrow().getHeadTime());
+		assertFalse(new CommitLedger(processedCommitRepository, elasticsearchTemplate, 100, true).shouldProcess("MAIN/projectA", 15L));
+	}
+
+	@Test
+	void shouldProcess_ShouldReturnFalse_WhenCommitRecordedByAnotherInstance() {
+		// given
+		new CommitLedger(processedCommitRepository, elasticsearchTemplate, 100, true).record("MAIN/projectA", 10L);
+		CommitLedger commitLedger = new CommitLedger(processedCommitRepository, elasticsearchTemplate, 100, true);
+
+		// then
+		assertFalse(commitLedger.shouldProcess("MAIN/projectA", 10L));
+		assertFalse(commitLedger.shouldProcess("MAIN/projectA", 5L));
+		assertTrue(commitLedger.shouldProcess("MAIN/projectA", 11L));
+		assertTrue(commitLedger.shouldProcess("MAIN/projectB", 10L));
+		assertEquals(1L, commitLedger.getStats().get("duplicateSkipCount"));
+		assertEquals(1L, commitLedger.getStats().get("outOfOrderSkipCount"));
+	}
+
+	@Test
+	void shouldProcess_ShouldReturnTrue_WhenPersistentLedgerCleared() {
+		// given
+		new CommitLedger(processedCommitRepository, elasticsearchTemplate, 100, true).record("MAIN/projectA", 10L);
+		CommitLedger commitLedger = new CommitLedger(processedCommitRepository, elasticsearchTemplate, 100, true);
+
+		// when
+		commitLedger.clear();
+
+		// then
+		assertFalse(processedCommitRepository.existsById("MAIN/projectA"));
+		assertTrue(new CommitLedger(processedCommitRepository, elasticsearchTemplate, 100, true).shouldProcess("MAIN/projectA", 10L));
+	}
+}
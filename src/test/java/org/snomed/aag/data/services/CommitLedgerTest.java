@@ -0,0 +1,63 @@
+package org.snomed.aag.data.services;
+
+import org.junit.jupiter.api.Test;
+import org.snomed.aag.data.repositories.ProcessedCommitRepository;
+import org.springframework.data.elasticsearch.client.elc.ElasticsearchTemplate;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class CommitLedgerTest {
+	private final CommitLedger commitLedger = new CommitLedger(mock(ProcessedCommitRepository.class), mock(ElasticsearchTemplate.class), 100, false);
+
+	@Test
+	void shouldProcess_ShouldReturnFalse_WhenSameCommitProcessed() {
+		// given
+		commitLedger.record("MAIN/projectA", 10L);
+
+		// when
+		boolean result = commitLedger.shouldProcess("MAIN/projectA", 10L);
+
+		// then
+		assertFalse(result);
+		assertEquals(1L, commitLedger.getStats().get("duplicateSkipCount"));
+	}
+
+	@Test
+	void shouldProcess_ShouldReturnFalse_WhenLaterCommitProcessed() {
+		// given
+		commitLedger.record("MAIN/projectA", 20L);
+		commitLedger.record("MAIN/projectA", 10L);
+
+		// when
+		boolean result = commitLedger.shouldProcess("MAIN/projectA", 15L);
+
+		// then
+		assertFalse(result);
+		assertEquals(1L, commitLedger.getStats().get("outOfOrderSkipCount"));
+	}
+
+	@Test
+	void shouldProcess_ShouldReturnTrue_WhenCommitIsNewerOrForAnotherBranch() {
+		// given
+		commitLedger.record("MAIN/projectA", 10L);
+
+		// then
+		assertTrue(commitLedger.shouldProcess("MAIN/projectA", 11L));
+		assertTrue(commitLedger.shouldProcess("MAIN/projectB", 10L));
+		assertTrue(commitLedger.shouldProcess(null, 10L));
+		assertEquals(0L, commitLedger.getStats().get("duplicateSkipCount"));
+	}
+
+	@Test
+	void shouldProcess_ShouldReturnTrue_WhenLedgerCleared() {
+		// given
+		commitLedger.record("MAIN/projectA", 10L);
+
+		// when
+		commitLedger.clear();
+
+		// then
+		assertTrue(commitLedger.shouldProcess("MAIN/projectA", 10L));
+	}
+}
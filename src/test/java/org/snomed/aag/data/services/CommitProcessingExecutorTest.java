@@ -0,0 +1,116 @@
+package org.snomed.aag.data.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CommitProcessingExecutorTest {
+	private CommitProcessingExecutor executor;
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		SecurityContextHolder.clearContext();
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void submit_ShouldCountFailure_WhenTaskThrows() throws Exception {
+		// given
+		executor = new CommitProcessingExecutor(1, 10, CommitProcessingExecutor.RejectionPolicy.REJECT);
+		CountDownLatch done = new CountDownLatch(1);
+
+		// when
+		executor.submit(() -> {
+			throw new IllegalStateException("Failed");
+		});
+		executor.submit(done::countDown);
+
+		// then
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		executor.shutdown();
+		assertEquals(1L, executor.getStats().get("failedCount"));
+		assertEquals(1L, executor.getStats().get("completedCount"));
+	}
+
+	@Test
+	void submit_ShouldRejectTask_WhenPoolAndQueueAreFull() throws Exception {
+		// given
+		executor = new CommitProcessingExecutor(1, 1, CommitProcessingExecutor.RejectionPolicy.REJECT);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.submit(() -> block(started, release));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		executor.submit(() -> {
+		});
+
+		// when
+		assertThrows(RejectedExecutionException.class, () -> executor.submit(() -> {
+		}));
+
+		// then
+		assertEquals(1L, executor.getStats().get("rejectedCount"));
+		assertEquals(1, executor.getStats().get("queueDepth"));
+		release.countDown();
+	}
+
+	@Test
+	void submit_ShouldRunTaskOnCaller_WhenPoolAndQueueAreFull() throws Exception {
+		// given
+		executor = new CommitProcessingExecutor(1, 1, CommitProcessingExecutor.RejectionPolicy.CALLER_RUNS);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		executor.submit(() -> block(started, release));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		executor.submit(() -> {
+		});
+		AtomicReference<Thread> thread = new AtomicReference<>();
+
+		// when
+		executor.submit(() -> thread.set(Thread.currentThread()));
+
+		// then
+		assertEquals(Thread.currentThread(), thread.get());
+		assertEquals(1L, executor.getStats().get("callerRunsCount"));
+		release.countDown();
+	}
+
+	@Test
+	void submit_ShouldRunTaskWithSecurityContextOfCaller() throws Exception {
+		// given
+		executor = new CommitProcessingExecutor(1, 10, CommitProcessingExecutor.RejectionPolicy.REJECT);
+		Authentication authentication = new TestingAuthenticationToken("user", "password");
+		SecurityContextHolder.getContext().setAuthentication(authentication);
+		AtomicReference<Authentication> taskAuthentication = new AtomicReference<>();
+		CountDownLatch done = new CountDownLatch(1);
+
+		// when
+		executor.submit(() -> {
+			taskAuthentication.set(SecurityContextHolder.getContext().getAuthentication());
+			done.countDown();
+		});
+
+		// then
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertEquals(authentication, taskAuthentication.get());
+	}
+
+	private static void block(CountDownLatch started, CountDownLatch release) {
+		started.countDown();
+		try {
+			release.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package org.snomed.aag.data.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.aag.data.pojo.CommitInformation;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class CommitProcessingLanesTest {
+	private final AcceptanceService acceptanceService = mock(AcceptanceService.class);
+	private final List<CommitInformation> processed = new CopyOnWriteArrayList<>();
+	private CommitProcessingExecutor executor;
+	private CommitProcessingLanes lanes;
+
+	@BeforeEach
+	void setUp() {
+		executor = new CommitProcessingExecutor(2, 10, CommitProcessingExecutor.RejectionPolicy.REJECT);
+		lanes = new CommitProcessingLanes(acceptanceService, executor);
+	}
+
+	@AfterEach
+	void tearDown() throws InterruptedException {
+		executor.shutdown();
+	}
+
+	@Test
+	void submit_ShouldProcessNewestWaitingCommit_WhenCommitsArriveWhileBranchIsProcessing() throws Exception {
+		// given
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			CommitInformation commitInformation = invocation.getArgument(0);
+			processed.add(commitInformation);
+			if (commitInformation.getHeadTime() == 1L) {
+				started.countDown();
+				release.await();
+			}
+			return null;
+		}).when(acceptanceService).processCommit(any());
+		lanes.submit(commit("MAIN/projectA", 1L));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		// when
+		lanes.submit(commit("MAIN/projectA", 2L));
+		lanes.submit(commit("MAIN/projectA", 4L));
+		lanes.submit(commit("MAIN/projectA", 3L));
+		release.countDown();
+
+		// then
+		awaitIdle();
+		assertEquals(List.of(1L, 4L), processed.stream().map(CommitInformation::getHeadTime).toList());
+		assertEquals(2L, lanes.getStats().get("coalescedCount"));
+	}
+
+	@Test
+	void submit_ShouldProcessBranchesInParallel() throws Exception {
+		// given
+		CountDownLatch bothStarted = new CountDownLatch(2);
+		doAnswer(invocation -> {
+			bothStarted.countDown();
+			// Only returns once both branches are being processed at the same time
+			assertTrue(bothStarted.await(5, TimeUnit.SECONDS));
+			processed.add(invocation.getArgument(0));
+			return null;
+		}).when(acceptanceService).processCommit(any());
+
+		// when
+		lanes.submit(commit("MAIN/projectA", 1L));
+		lanes.submit(commit("MAIN/projectB", 1L));
+
+		// then
+		awaitIdle();
+		assertEquals(2, processed.size());
+		assertEquals(0L, lanes.getStats().get("failedCommitCount"));
+	}
+
+	@Test
+	void submit_ShouldProcessWaitingCommit_WhenPreviousCommitFails() throws Exception {
+		// given
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			CommitInformation commitInformation = invocation.getArgument(0);
+			if (commitInformation.getHeadTime() == 1L) {
+				started.countDown();
+				release.await();
+				throw new IllegalStateException("Failed");
+			}
+			processed.add(commitInformation);
+			return null;
+		}).when(acceptanceService).processCommit(any());
+		lanes.submit(commit("MAIN/projectA", 1L));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+
+		// when
+		lanes.submit(commit("MAIN/projectA", 2L));
+		release.countDown();
+
+		// then
+		awaitIdle();
+		assertEquals(List.of(2L), processed.stream().map(CommitInformation::getHeadTime).toList());
+		assertEquals(1L, lanes.getStats().get("failedCommitCount"));
+	}
+
+	@Test
+	void submit_ShouldOnlyProcessSubmittedCommitOnCaller_WhenPoolIsFull() throws Exception {
+		// given
+		executor.shutdown();
+		executor = new CommitProcessingExecutor(1, 1, CommitProcessingExecutor.RejectionPolicy.CALLER_RUNS);
+		lanes = new CommitProcessingLanes(acceptanceService, executor);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		doAnswer(invocation -> {
+			CommitInformation commitInformation = invocation.getArgument(0);
+			processed.add(commitInformation);
+			if (commitInformation.getBranchPathReceivingChanges().equals("MAIN/projectA")) {
+				started.countDown();
+				release.await();
+			} else if (commitInformation.getHeadTime() == 1L && commitInformation.getBranchPathReceivingChanges().equals("MAIN/projectC")) {
+				// Arrives while the first commit of the branch is processed on the calling thread
+				lanes.submit(commit("MAIN/projectC", 2L));
+			}
+			return null;
+		}).when(acceptanceService).processCommit(any());
+		lanes.submit(commit("MAIN/projectA", 1L));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		lanes.submit(commit("MAIN/projectB", 1L));
+
+		// when
+		lanes.submit(commit("MAIN/projectC", 1L));
+
+		// then
+		assertEquals(List.of("MAIN/projectA", "MAIN/projectC"), processed.stream().map(CommitInformation::getBranchPathReceivingChanges).toList());
+		assertEquals(1L, lanes.getStats().get("unscheduledLanes"));
+
+		release.countDown();
+		awaitIdle();
+		assertEquals(4, processed.size());
+		assertTrue(processed.stream().anyMatch(commitInformation -> commitInformation.getBranchPathReceivingChanges().equals("MAIN/projectC") && commitInformation.getHeadTime() == 2L));
+	}
+
+	private void awaitIdle() throws InterruptedException {
+		for (int attempt = 0; attempt < 50 && !Integer.valueOf(0).equals(lanes.getStats().get("activeLanes")); attempt++) {
+			Thread.sleep(100);
+		}
+		assertEquals(0, lanes.getStats().get("activeLanes"));
+	}
+
+	private static CommitInformation commit(String branchPath, long headTime) {
+		return new CommitInformation(branchPath, CommitInformation.CommitType.CONTENT, headTime, Collections.emptyMap());
+	}
+}
@@ -0,0 +1,139 @@
+package org.snomed.aag.data.services;
+
+import jakarta.jms.TextMessage;
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.aag.data.pojo.CommitInformation;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CommitQueueServiceTest {
+	private static final String QUEUE_NAME = "test.aag.commit";
+	private static final String SERVICE_TOKEN = "service-token";
+
+	private final AcceptanceService acceptanceService = mock(AcceptanceService.class);
+	private JmsTemplate jmsTemplate;
+	private CommitQueueService commitQueueService;
+
+	@BeforeEach
+	void setUp() {
+		jmsTemplate = new JmsTemplate(new ActiveMQConnectionFactory("vm://commit-queue-test?broker.persistent=false"));
+		jmsTemplate.setReceiveTimeout(5000);
+		commitQueueService = new CommitQueueService(jmsTemplate, acceptanceService, true, QUEUE_NAME, SERVICE_TOKEN);
+	}
+
+	@AfterEach
+	void tearDown() {
+		SecurityContextHolder.clearContext();
+	}
+
+	@Test
+	void publish_ShouldGroupMessageByBranchReceivingChanges() throws Exception {
+		// given
+		CommitInformation commitInformation = new CommitInformation("MAIN/projectA/taskB", "MAIN/projectA", CommitInformation.CommitType.PROMOTION, 10L, Collections.emptyMap());
+
+		// when
+		commitQueueService.publish(commitInformation);
+
+		// then
+		TextMessage message = (TextMessage) jmsTemplate.receive(QUEUE_NAME);
+		assertNotNull(message);
+		assertEquals("MAIN/projectA", message.getStringProperty(CommitQueueService.GROUP_ID_PROPERTY));
+	}
+
+	@Test
+	void publish_ShouldNotSendCredentialsOrRoles_WhenUserIsAuthenticated() throws Exception {
+		// given
+		SecurityContextHolder.getContext().setAuthentication(new PreAuthenticatedAuthenticationToken("user", "token", AuthorityUtils.createAuthorityList("ROLE_A", "ROLE_B")));
+
+		// when
+		commitQueueService.publish(new CommitInformation("MAIN/projectA", CommitInformation.CommitType.CONTENT, 10L, Collections.emptyMap()));
+
+		// then
+		TextMessage message = (TextMessage) jmsTemplate.receive(QUEUE_NAME);
+		assertNotNull(message);
+		assertEquals("user", message.getStringProperty(CommitQueueService.USERNAME_PROPERTY));
+		for (Object name : Collections.list(message.getPropertyNames())) {
+			Object value = message.getObjectProperty((String) name);
+			assertNotEquals("token", value);
+			assertFalse(String.valueOf(value).contains("ROLE_"));
+		}
+		assertFalse(message.getText().contains("token"));
+	}
+
+	@Test
+	void consume_ShouldUseServiceToken_WhenMessageCarriesForgedCredentials() throws Exception {
+		// given
+		jmsTemplate.send(QUEUE_NAME, session -> {
+			TextMessage message = session.createTextMessage("{\"sourceBranchPath\":\"MAIN/projectA\",\"commitType\":\"CONTENT\",\"headTime\":10}");
+			message.setStringProperty(CommitQueueService.USERNAME_PROPERTY, "user");
+			message.setStringProperty("aagAuthenticationToken", "forged-token");
+			message.setStringProperty("aagRoles", "ROLE_ADMIN");
+			return message;
+		});
+		TextMessage message = (TextMessage) jmsTemplate.receive(QUEUE_NAME);
+		AtomicReference<Object> credentials = new AtomicReference<>();
+		AtomicReference<Collection<?>> authorities = new AtomicReference<>();
+		doAnswer(invocation -> {
+			credentials.set(SecurityContextHolder.getContext().getAuthentication().getCredentials());
+			authorities.set(SecurityContextHolder.getContext().getAuthentication().getAuthorities());
+			return null;
+		}).when(acceptanceService).processCommit(any(), anyBoolean());
+
+		// when
+		commitQueueService.consume(message);
+
+		// then
+		verify(acceptanceService).processCommit(any(), eq(false));
+		assertEquals(SERVICE_TOKEN, credentials.get());
+		assertTrue(authorities.get().isEmpty());
+	}
+
+	@Test
+	void consume_ShouldProcessCommitAsPublishingUserWithServiceToken() throws Exception {
+		// given
+		SecurityContextHolder.getContext().setAuthentication(new PreAuthenticatedAuthenticationToken("user", "token", AuthorityUtils.createAuthorityList("ROLE_A", "ROLE_B")));
+		commitQueueService.publish(new CommitInformation("MAIN/projectA", CommitInformation.CommitType.CONTENT, 10L, Collections.emptyMap()));
+		TextMessage message = (TextMessage) jmsTemplate.receive(QUEUE_NAME);
+		SecurityContextHolder.clearContext();
+		AtomicReference<Object> principal = new AtomicReference<>();
+		AtomicReference<Object> credentials = new AtomicReference<>();
+		AtomicReference<Collection<?>> authorities = new AtomicReference<>();
+		doAnswer(invocation -> {
+			principal.set(SecurityContextHolder.getContext().getAuthentication().getPrincipal());
+			credentials.set(SecurityContextHolder.getContext().getAuthentication().getCredentials());
+			authorities.set(SecurityContextHolder.getContext().getAuthentication().getAuthorities());
+			return null;
+		}).when(acceptanceService).processCommit(any(), anyBoolean());
+
+		// when
+		commitQueueService.consume(message);
+
+		// then
+		verify(acceptanceService).processCommit(argThat(commitInformation -> "MAIN/projectA".equals(commitInformation.getSourceBranchPath()) && commitInformation.getHeadTime() == 10L), eq(false));
+		assertEquals("user", principal.get());
+		assertEquals(SERVICE_TOKEN, credentials.get());
+		assertTrue(authorities.get().isEmpty());
+		assertNull(SecurityContextHolder.getContext().getAuthentication());
+	}
+
+	@Test
+	void constructor_ShouldThrow_WhenEnabledWithoutServiceToken() {
+		assertThrows(IllegalStateException.class, () -> new CommitQueueService(jmsTemplate, acceptanceService, true, QUEUE_NAME, ""));
+		assertDoesNotThrow(() -> new CommitQueueService(jmsTemplate, acceptanceService, false, QUEUE_NAME, ""));
+	}
+}
@@ -0,0 +1,85 @@
+package org.snomed.aag.data.services;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.aag.AbstractTest;
+import org.snomed.aag.data.domain.WhitelistItem;
+import org.snomed.aag.data.domain.WhitelistItemTombstone;
+import org.snomed.aag.data.pojo.MaintenanceTask;
+import org.springframework.data.elasticsearch.core.IndexOperations;
+import org.springframework.data.elasticsearch.core.mapping.IndexCoordinates;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IndexMigrationServiceTest extends AbstractTest {
+	private static final IndexMigrationService.ChangeTracking CHANGE_TRACKING = new IndexMigrationService.ChangeTracking(WhitelistItem.Fields.LAST_MODIFIED,
+			WhitelistItemTombstone.class, WhitelistItemTombstone.Fields.DELETION_DATE);
+
+	@AfterEach
+	void tearDown() {
+		elasticsearchTemplate.indexOps(IndexCoordinates.of(getTarget())).delete();
+	}
+
+	@Test
+	void catchUp_ShouldApplyChangesMadeDuringCopy_WhenItemsCreatedAndDeleted() {
+		// given
+		WhitelistItem keptItem = whitelistService.create(givenWhitelistItem("100"));
+		WhitelistItem deletedItem = whitelistService.create(givenWhitelistItem("200"));
+		String source = elasticsearchTemplate.getIndexCoordinatesFor(WhitelistItem.class).getIndexName();
+		IndexOperations entityIndexOps = elasticsearchTemplate.indexOps(WhitelistItem.class);
+		IndexOperations targetIndexOps = elasticsearchTemplate.indexOps(IndexCoordinates.of(getTarget()));
+		targetIndexOps.create(entityIndexOps.createSettings(), entityIndexOps.createMapping());
+		long copyStart = System.currentTimeMillis();
+		elasticsearchTemplate.save(List.of(keptItem, deletedItem), IndexCoordinates.of(getTarget()));
+		targetIndexOps.refresh();
+
+		// Changes made while the copy was running
+		WhitelistItem createdItem = whitelistService.create(givenWhitelistItem("300"));
+		whitelistService.delete(deletedItem);
+
+		// when
+		long changes = indexMigrationService.catchUp(WhitelistItem.class, source, getTarget(), CHANGE_TRACKING, copyStart, new MaintenanceTask("Test"));
+
+		// then
+		assertTrue(changes >= 2);
+		assertTrue(elasticsearchTemplate.exists(keptItem.getId(), IndexCoordinates.of(getTarget())));
+		assertTrue(elasticsearchTemplate.exists(createdItem.getId(), IndexCoordinates.of(getTarget())));
+		assertFalse(elasticsearchTemplate.exists(deletedItem.getId(), IndexCoordinates.of(getTarget())));
+	}
+
+	@Test
+	void catchUp_ShouldKeepItem_WhenDeletedAndCreatedAgain() {
+		// given
+		WhitelistItem whitelistItem = whitelistService.create(givenWhitelistItem("100"));
+		String source = elasticsearchTemplate.getIndexCoordinatesFor(WhitelistItem.class).getIndexName();
+		IndexOperations entityIndexOps = elasticsearchTemplate.indexOps(WhitelistItem.class);
+		elasticsearchTemplate.indexOps(IndexCoordinates.of(getTarget())).create(entityIndexOps.createSettings(), entityIndexOps.createMapping());
+		long copyStart = System.currentTimeMillis();
+
+		whitelistService.delete(whitelistItem);
+		WhitelistItem recreatedItem = whitelistService.create(givenWhitelistItem("100"));
+
+		// when
+		indexMigrationService.catchUp(WhitelistItem.class, source, getTarget(), CHANGE_TRACKING, copyStart, new MaintenanceTask("Test"));
+
+		// then
+		assertEquals(whitelistItem.getId(), recreatedItem.getId());
+		assertTrue(elasticsearchTemplate.exists(recreatedItem.getId(), IndexCoordinates.of(getTarget())));
+	}
+
+	private String getTarget() {
+		return elasticsearchTemplate.getIndexCoordinatesFor(WhitelistItem.class).getIndexName() + "_catch-up-test";
+	}
+
+	private WhitelistItem givenWhitelistItem(String componentId) {
+		WhitelistItem whitelistItem = new WhitelistItem();
+		whitelistItem.setUserId("IndexMigrationServiceTest");
+		whitelistItem.setValidationRuleId("test-rule-id");
+		whitelistItem.setComponentId(componentId);
+		whitelistItem.setConceptId("101");
+		whitelistItem.setBranch("MAIN/projectA");
+		return whitelistItem;
+	}
+}
@@ -0,0 +1,72 @@
+package org.snomed.aag.data.services;
+
+import org.junit.jupiter.api.Test;
+import org.snomed.aag.AbstractTest;
+import org.snomed.aag.data.domain.ProjectAcceptanceCriteria;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ProjectAcceptanceCriteriaServiceTest extends AbstractTest {
+
+	@Test
+	void findByBranchPathWithRelevantCriteriaItems_ShouldReturnCriteriaOfBranch_WhenBranchAndAncestorHaveCriteria() throws Exception {
+		// given
+		givenBranchDoesExist();
+		projectAcceptanceCriteriaService.create(new ProjectAcceptanceCriteria("MAIN/projectA", 5));
+		projectAcceptanceCriteriaService.create(new ProjectAcceptanceCriteria("MAIN/projectA/taskA", 1));
+
+		// when
+		ProjectAcceptanceCriteria result = projectAcceptanceCriteriaService.findByBranchPathWithRelevantCriteriaItems("MAIN/projectA/taskA", true);
+
+		// then
+		assertNotNull(result);
+		assertEquals("MAIN/projectA/taskA", result.getBranchPath());
+		assertEquals(1, result.getProjectIteration());
+	}
+
+	@Test
+	void findByBranchPathWithRelevantCriteriaItems_ShouldReturnCriteriaOfParent_WhenOnlyAncestorHasCriteria() throws Exception {
+		// given
+		givenBranchDoesExist();
+		projectAcceptanceCriteriaService.create(new ProjectAcceptanceCriteria("MAIN/projectA", 1));
+
+		// when
+		ProjectAcceptanceCriteria result = projectAcceptanceCriteriaService.findByBranchPathWithRelevantCriteriaItems("MAIN/projectA/taskA", true);
+
+		// then
+		assertNotNull(result);
+		assertEquals("MAIN/projectA", result.getBranchPath());
+	}
+
+	@Test
+	void findByBranchPathWithRelevantCriteriaItems_ShouldReturnLatestIteration_WhenBranchHasSeveralIterations() throws Exception {
+		// given
+		givenBranchDoesExist();
+		projectAcceptanceCriteriaService.create(new ProjectAcceptanceCriteria("MAIN/projectA", 1));
+		projectAcceptanceCriteriaService.create(new ProjectAcceptanceCriteria("MAIN/projectA", 3));
+		projectAcceptanceCriteriaService.create(new ProjectAcceptanceCriteria("MAIN/projectA", 2));
+		projectAcceptanceCriteriaService.create(new ProjectAcceptanceCriteria("MAIN/projectB", 7));
+
+		// when
+		ProjectAcceptanceCriteria projectResult = projectAcceptanceCriteriaService.findByBranchPathWithRelevantCriteriaItems("MAIN/projectA", true);
+		ProjectAcceptanceCriteria taskResult = projectAcceptanceCriteriaService.findByBranchPathWithRelevantCriteriaItems("MAIN/projectA/taskA", true);
+
+		// then
+		assertEquals(3, projectResult.getProjectIteration());
+		assertEquals("MAIN/projectA", taskResult.getBranchPath());
+		assertEquals(3, taskResult.getProjectIteration());
+	}
+
+	@Test
+	void findByBranchPathWithRelevantCriteriaItems_ShouldReturnNull_WhenOnlyAncestorBeyondDepthHasCriteria() throws Exception {
+		// given
+		givenBranchDoesExist();
+		projectAcceptanceCriteriaService.create(new ProjectAcceptanceCriteria("MAIN", 1));
+
+		// when
+		ProjectAcceptanceCriteria result = projectAcceptanceCriteriaService.findByBranchPathWithRelevantCriteriaItems("MAIN/projectA/taskA", true);
+
+		// then
+		assertNull(result);
+	}
+}
@@ -6,13 +6,15 @@ import org.snomed.aag.AbstractTest;
 import org.snomed.aag.data.domain.WhitelistItem;
 import org.snomed.aag.data.repositories.WhitelistItemRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.*;
 
 class WhitelistServiceTest extends AbstractTest {
     @Autowired
@@ -56,6 +58,137 @@ class WhitelistServiceTest extends AbstractTest {
         assertTrue(results.isEmpty());
     }
 
+    @Test
+    void testValidateWhenItemsMatchPersistedItems() {
+        createWhitelistItemsForTest("4ee9cfeb-3ce5-48bf-b238-de7498fde042", 2_000);
+        Set<WhitelistItem> itemsToCheck = new LinkedHashSet<>();
+        for (String additionalFields : List.of("Test 1999", "Test 2000", "Test 7")) {
+            WhitelistItem item = new WhitelistItem();
+            item.setValidationRuleId("4ee9cfeb-3ce5-48bf-b238-de7498fde042");
+            item.setAdditionalFields(additionalFields);
+            item.setComponentId("4170222010");
+            item.setConceptId("81835008");
+            itemsToCheck.add(item);
+        }
+
+        List<WhitelistItem> results = whitelistService.validateWhitelistComponents(itemsToCheck);
+        assertEquals(List.of("Test 1999", "Test 7"), results.stream().map(WhitelistItem::getAdditionalFields).toList());
+    }
+
+    @Test
+    void testStreamAllByBranchWhenItemsAreOver10K() {
+        // Set up temporary whitelist items over 10k on one branch
+        List<WhitelistItem> items = new ArrayList<>();
+        for (int i = 0; i < 10_001; i++) {
+            WhitelistItem item = new WhitelistItem();
+            item.setValidationRuleId("4ee9cfeb-3ce5-48bf-b238-de7498fde042");
+            item.setConceptId("81835008");
+            item.setComponentId("4170222010");
+            item.setAdditionalFields("Test " + i);
+            item.setBranch("MAIN/SNOMEDCT-XX");
+            item.setTemporary(true);
+            item.setCreationDate(new Date());
+            items.add(item);
+        }
+        Iterables.partition(items, 1_000).forEach(batch -> whitelistItemRepository.saveAll(batch));
+
+        try (Stream<WhitelistItem> results = whitelistService.streamAllByBranchAndMinimumCreationDate("MAIN/SNOMEDCT-XX", null, WhitelistItem.WhitelistItemType.TEMPORARY, false)) {
+            assertEquals(10_001, results.count());
+        }
+    }
+
+    @Test
+    void testStreamAllByBranchIncludingDescendantsWhenItemsHaveNoDerivedFields() {
+        // Entries saved without ancestor paths or code system, as created before those fields were introduced
+        List<WhitelistItem> items = new ArrayList<>();
+        for (String branch : List.of("MAIN/SNOMEDCT-XX", "MAIN/SNOMEDCT-XX/projectA", "MAIN/SNOMEDCT-XX/SNOMEDCT-YY", "MAIN/projectB")) {
+            WhitelistItem item = new WhitelistItem();
+            item.setValidationRuleId("4ee9cfeb-3ce5-48bf-b238-de7498fde042");
+            item.setConceptId("81835008");
+            item.setComponentId("4170222010");
+            item.setAdditionalFields("Test " + branch);
+            item.setBranch(branch);
+            item.setCreationDate(new Date());
+            items.add(item);
+        }
+        whitelistItemRepository.saveAll(items);
+        whitelistService.checkLegacyEntries();
+
+        try (Stream<WhitelistItem> results = whitelistService.streamAllByBranchAndMinimumCreationDate("MAIN/SNOMEDCT-XX", null, WhitelistItem.WhitelistItemType.ALL, true)) {
+            assertEquals(Set.of("MAIN/SNOMEDCT-XX", "MAIN/SNOMEDCT-XX/projectA"), results.map(WhitelistItem::getBranch).collect(Collectors.toSet()));
+        }
+    }
+
+    @Test
+    void testStreamAllByBranchIncludingDescendantsAfterReindex() {
+        WhitelistItem item = new WhitelistItem();
+        item.setValidationRuleId("4ee9cfeb-3ce5-48bf-b238-de7498fde042");
+        item.setConceptId("81835008");
+        item.setComponentId("4170222010");
+        item.setAdditionalFields("Test");
+        item.setBranch("MAIN/SNOMEDCT-XX/projectA");
+        item.setCreationDate(new Date());
+        whitelistItemRepository.save(item);
+        assertTrue(whitelistService.checkLegacyEntries());
+
+        assertEquals(1, whitelistService.reindexDerivedFields());
+
+        assertFalse(whitelistService.checkLegacyEntries());
+
+        try (Stream<WhitelistItem> results = whitelistService.streamAllByBranchAndMinimumCreationDate("MAIN/SNOMEDCT-XX", null, WhitelistItem.WhitelistItemType.ALL, true)) {
+            assertEquals(List.of("MAIN/SNOMEDCT-XX/projectA"), results.map(WhitelistItem::getBranch).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void testCreateWhenTemporaryItemWithSameContentExists() {
+        givenAuthenticatedUser("WhitelistServiceTest");
+        WhitelistItem temporary = whitelistService.create(buildWhitelistItem("MAIN/SNOMEDCT-XX", "Test 1", true));
+
+        WhitelistItem permanent = whitelistService.create(buildWhitelistItem("MAIN/SNOMEDCT-XX", "Test 1", false));
+
+        assertNotEquals(temporary.getId(), permanent.getId());
+        assertTrue(whitelistItemRepository.findById(temporary.getId()).orElseThrow().isTemporary());
+        assertFalse(whitelistItemRepository.findById(permanent.getId()).orElseThrow().isTemporary());
+    }
+
+    @Test
+    void testUpdateWhenContentChanges() {
+        givenAuthenticatedUser("WhitelistServiceTest");
+        WhitelistItem created = whitelistService.create(buildWhitelistItem("MAIN/SNOMEDCT-XX", "Test 1", false));
+        String originalId = created.getId();
+
+        created.setAdditionalFields("Test 2");
+        ServiceRuntimeException exception = assertThrows(ServiceRuntimeException.class, () -> whitelistService.update(created));
+
+        assertEquals(HttpStatus.CONFLICT, exception.getHttpStatus());
+        assertEquals("Test 1", whitelistService.findOrThrow(originalId).getAdditionalFields());
+        assertEquals(originalId, whitelistService.create(buildWhitelistItem("MAIN/SNOMEDCT-XX", "Test 1", false)).getId());
+    }
+
+    @Test
+    void testUpdateKeepsIdWhenReasonChanges() {
+        givenAuthenticatedUser("WhitelistServiceTest");
+        WhitelistItem created = whitelistService.create(buildWhitelistItem("MAIN/SNOMEDCT-XX", "Test 1", false));
+
+        created.setReason("Reviewed");
+        WhitelistItem updated = whitelistService.update(created);
+
+        assertEquals(created.getId(), updated.getId());
+        assertEquals("Reviewed", whitelistService.findOrThrow(created.getId()).getReason());
+    }
+
+    private WhitelistItem buildWhitelistItem(String branch, String additionalFields, boolean temporary) {
+        WhitelistItem item = new WhitelistItem();
+        item.setValidationRuleId("4ee9cfeb-3ce5-48bf-b238-de7498fde042");
+        item.setConceptId("81835008");
+        item.setComponentId("4170222010");
+        item.setAdditionalFields(additionalFields);
+        item.setBranch(branch);
+        item.setTemporary(temporary);
+        return item;
+    }
+
     private void createWhitelistItemsForTest(String validationRuleId, int maxItems) {
         List<WhitelistItem> items = new ArrayList<>();
         for (int i = 0; i < maxItems; i++) {
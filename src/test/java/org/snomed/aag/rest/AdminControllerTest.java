@@ -8,7 +8,10 @@ import org.snomed.aag.AbstractTest;
 import org.snomed.aag.TestConfig;
 import org.snomed.aag.data.domain.CriteriaItem;
 import org.snomed.aag.data.domain.CriteriaItemSignOff;
+import org.snomed.aag.data.domain.CriteriaItemSignOffTask;
 import org.snomed.aag.data.domain.ProjectAcceptanceCriteria;
+import org.snomed.aag.data.domain.WhitelistItem;
+import org.snomed.aag.data.pojo.MaintenanceTask;
 import org.snomed.aag.rest.pojo.ProjectAcceptanceCriteriaDTO;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
@@ -16,9 +19,13 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
@@ -31,7 +38,8 @@ class AdminControllerTest extends AbstractTest {
 
 	@BeforeEach
 	public void setUp() {
-		this.adminController = new AdminController(acceptanceService);
+		this.adminController = new AdminController(acceptanceService, securityService, acceptanceStatusService, criteriaItemSignOffService, whitelistService, indexMigrationService,
+				commitProcessingLanes, validationProcessingExecutor, commitLedger, maintenanceTaskService);
 		this.acceptanceController = new AcceptanceController(
 				securityService,
 				projectAcceptanceCriteriaService,
@@ -204,6 +212,101 @@ class AdminControllerTest extends AbstractTest {
 		assertEquals(2, criteriaItemSignOffs.size()); // All approved items should be returned (including those previously created).
 	}
 
+	@Test
+	void signOffAllCriteriaItems_ShouldReturnResultPerItem_WhenSignOffPreviouslyExisted() throws Exception {
+		// given
+		String projectPath = "MAIN/projectA";
+		String taskPath = "MAIN/projectA/taskB";
+		String signOffAllCriteriaItems = signOffAllCriteriaItems(withPipeInsteadOfSlash(taskPath));
+		String projectCriteriaId = "project-criteria-id";
+		String taskCriteriaId = "task-criteria-id";
+
+		givenBranchDoesExist();
+		givenProjectAcceptanceCriteriaExists(projectPath, 1, projectCriteriaId, taskCriteriaId);
+		givenCriteriaItemExists(projectCriteriaId, false, 0, projectCriteriaId);
+		givenCriteriaItemExists(taskCriteriaId, true, 1, taskCriteriaId);
+		givenCriteriaItemSignOffExists(taskPath, taskCriteriaId);
+
+		// when
+		ResultActions resultActions = mockMvc.perform(post(signOffAllCriteriaItems));
+		List<CriteriaItemSignOff> criteriaItemSignOffs = toCriteriaItemSignOffs(getResponseBody(resultActions));
+
+		// then
+		Map<String, CriteriaItemSignOff.Result> results = criteriaItemSignOffs.stream().collect(Collectors.toMap(CriteriaItemSignOff::getCriteriaItemId, CriteriaItemSignOff::getResult));
+		assertEquals(CriteriaItemSignOff.Result.ALREADY_PRESENT, results.get(taskCriteriaId));
+		assertEquals(CriteriaItemSignOff.Result.CREATED, results.get(projectCriteriaId));
+	}
+
+	@Test
+	void rekeyCriteriaItemSignOffs_ShouldMoveSignOffToDerivedIdentifier_WhenSignOffHasRandomIdentifier() throws Exception {
+		// given
+		String branchPath = "MAIN/projectA/taskB";
+		CriteriaItemSignOff criteriaItemSignOff = new CriteriaItemSignOffTask("task-criteria-id", branchPath, 1L, "user");
+		criteriaItemSignOff.setId(UUID.randomUUID().toString());
+		criteriaItemSignOffRepository.save(criteriaItemSignOff);
+
+		// when
+		ResultActions resultActions = mockMvc.perform(post("/admin/criteria-item-sign-off/rekey"));
+
+		// then
+		assertResponseStatus(resultActions, 200);
+		assertFalse(criteriaItemSignOffRepository.existsById(criteriaItemSignOff.getId()));
+		assertTrue(criteriaItemSignOffRepository.existsById(CriteriaItemSignOff.toId("task-criteria-id", branchPath, null)));
+	}
+
+	@Test
+	void migrateWhitelistIndex_ShouldKeepWhitelistItems_WhenIndexMovedBehindAlias() throws Exception {
+		// given
+		WhitelistItem whitelistItem = new WhitelistItem();
+		whitelistItem.setUserId("AdminControllerTest");
+		whitelistItem.setValidationRuleId("test-rule-id");
+		whitelistItem.setComponentId("100");
+		whitelistItem.setConceptId("101");
+		whitelistItem.setBranch("MAIN/projectA");
+		whitelistItem.setAdditionalFields("1,900000000000207008,101,en");
+		whitelistItem = whitelistService.create(whitelistItem);
+
+		// when
+		ResultActions resultActions = mockMvc.perform(post("/admin/whitelist-items/migrate-index"));
+
+		// then
+		assertResponseStatus(resultActions, 202);
+		MaintenanceTask task = awaitMaintenanceTask(resultActions);
+		assertEquals(MaintenanceTask.Status.COMPLETED, task.getStatus());
+		assertTrue(((String) task.getResult().get("index")).endsWith("_v" + WhitelistItem.MAPPING_VERSION));
+		assertEquals("1,900000000000207008,101,en", whitelistService.findOrThrow(whitelistItem.getId()).getAdditionalFields());
+		assertEquals(List.of(whitelistItem.getId()), whitelistService.validateWhitelistComponents(Set.of(whitelistItem)).stream().map(WhitelistItem::getId).toList());
+	}
+
+	@Test
+	void deleteWhitelistItems_ShouldDeleteMatchingItemsAndRecordTombstones_WhenGivenType() throws Exception {
+		// given
+		List<WhitelistItem> whitelistItems = new ArrayList<>();
+		for (boolean temporary : List.of(true, false)) {
+			WhitelistItem whitelistItem = new WhitelistItem();
+			whitelistItem.setUserId("AdminControllerTest");
+			whitelistItem.setValidationRuleId("test-rule-id");
+			whitelistItem.setComponentId(temporary ? "100" : "200");
+			whitelistItem.setConceptId("101");
+			whitelistItem.setBranch("MAIN/projectA");
+			whitelistItem.setTemporary(temporary);
+			whitelistItems.add(whitelistService.create(whitelistItem));
+		}
+
+		// when
+		ResultActions resultActions = mockMvc.perform(delete("/admin/whitelist-items?branch=MAIN&type=TEMPORARY"));
+
+		// then
+		assertResponseStatus(resultActions, 202);
+		MaintenanceTask task = awaitMaintenanceTask(resultActions);
+		assertEquals(MaintenanceTask.Status.COMPLETED, task.getStatus());
+		assertNotNull(task.getElasticsearchTaskId());
+		assertEquals(1L, ((Number) task.getResult().get("deleted")).longValue());
+		assertFalse(whitelistItemRepository.existsById(whitelistItems.get(0).getId()));
+		assertTrue(whitelistItemRepository.existsById(whitelistItems.get(1).getId()));
+		assertTrue(whitelistItemTombstoneRepository.existsById(whitelistItems.get(0).getId()));
+	}
+
 	@Test
 	void rejectAllCriteriaItems_ShouldReturnExpectedResponse_WhenBranchDoesNotExist() throws Exception {
 		// given
@@ -306,6 +409,20 @@ class AdminControllerTest extends AbstractTest {
 		}
 	}
 
+	private MaintenanceTask awaitMaintenanceTask(ResultActions submission) throws Exception {
+		final String location = submission.andReturn().getResponse().getHeader("Location");
+		final String id = location.substring(location.lastIndexOf('/') + 1);
+		for (int attempt = 0; attempt < 300; attempt++) {
+			final MaintenanceTask task = maintenanceTaskService.getTask(id);
+			if (task.isFinished()) {
+				return task;
+			}
+			Thread.sleep(100);
+		}
+		fail("Maintenance task " + id + " did not finish.");
+		return null;
+	}
+
 	private String signOffAllCriteriaItems(String branchPath) {
 		return "/admin/criteria/" + branchPath + "/accept";
 	}
@@ -11,6 +11,7 @@ import org.snomed.aag.data.domain.CriteriaItem;
 import org.snomed.aag.data.domain.ProjectAcceptanceCriteria;
 import org.snomed.aag.data.pojo.CommitInformation;
 import org.snomed.aag.data.pojo.ValidationInformation;
+import org.snomed.aag.data.pojo.ValidationJob;
 import org.snomed.aag.rest.pojo.ProjectAcceptanceCriteriaDTO;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
@@ -20,10 +21,15 @@ import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 
@@ -36,7 +42,8 @@ class ServiceIntegrationControllerTest extends AbstractTest {
 
 	@BeforeEach
 	public void setUp() {
-		this.serviceIntegrationController = new ServiceIntegrationController(commitInformationValidator, acceptanceService, projectAcceptanceCriteriaService);
+		this.serviceIntegrationController = new ServiceIntegrationController(commitInformationValidator, projectAcceptanceCriteriaService, securityService,
+				commitProcessingLanes, commitQueueService, validationProcessingService);
 		this.acceptanceController = new AcceptanceController(securityService, projectAcceptanceCriteriaService, acceptanceService);
 		this.acceptanceCriteriaController = new AcceptanceCriteriaController(projectAcceptanceCriteriaService, projectAcceptanceCriteriaUpdateValidator);
 		this.mockMvc = MockMvcBuilders
@@ -449,7 +456,7 @@ class ServiceIntegrationControllerTest extends AbstractTest {
 		// when
 		String receiveValidation = receiveValidation();
 		ValidationInformation validationInformation = new ValidationInformation(projectBranch, "COMPLETE", "https://www.test.com");
-		mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation)));
+		awaitValidationJob(mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation))));
 
 		// then
 		ProjectAcceptanceCriteriaDTO projectPAC = toProjectAcceptanceCriteriaDTO(getResponseBody(mockMvc.perform(get(viewCriteriaItems(withPipeInsteadOfSlash(projectBranch))).contentType(MediaType.APPLICATION_JSON))));
@@ -471,7 +478,7 @@ class ServiceIntegrationControllerTest extends AbstractTest {
 		// when
 		String receiveValidation = receiveValidation();
 		ValidationInformation validationInformation = new ValidationInformation(projectBranch, "COMPLETE", "https://www.test.com");
-		mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation)));
+		awaitValidationJob(mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation))));
 
 		// then
 		ProjectAcceptanceCriteriaDTO projectPAC = toProjectAcceptanceCriteriaDTO(getResponseBody(mockMvc.perform(get(viewCriteriaItems(withPipeInsteadOfSlash(projectBranch))).contentType(MediaType.APPLICATION_JSON))));
@@ -494,7 +501,7 @@ class ServiceIntegrationControllerTest extends AbstractTest {
 		// when
 		String receiveValidation = receiveValidation();
 		ValidationInformation validationInformation = new ValidationInformation(taskBranch, "COMPLETE", "https://www.test.com");
-		mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation)));
+		awaitValidationJob(mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation))));
 
 		// then
 		ProjectAcceptanceCriteriaDTO projectPAC = toProjectAcceptanceCriteriaDTO(getResponseBody(mockMvc.perform(get(viewCriteriaItems(withPipeInsteadOfSlash(taskBranch))).contentType(MediaType.APPLICATION_JSON))));
@@ -517,7 +524,7 @@ class ServiceIntegrationControllerTest extends AbstractTest {
 		// when
 		String receiveValidation = receiveValidation();
 		ValidationInformation validationInformation = new ValidationInformation(taskBranch, "COMPLETE", "https://www.test.com");
-		mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation)));
+		awaitValidationJob(mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation))));
 
 		// then
 		ProjectAcceptanceCriteriaDTO projectPAC = toProjectAcceptanceCriteriaDTO(getResponseBody(mockMvc.perform(get(viewCriteriaItems(withPipeInsteadOfSlash(taskBranch))).contentType(MediaType.APPLICATION_JSON))));
@@ -539,7 +546,7 @@ class ServiceIntegrationControllerTest extends AbstractTest {
 		// when
 		String receiveValidation = receiveValidation();
 		ValidationInformation validationInformation = new ValidationInformation(projectBranch, "COMPLETE", "https://www.test.com");
-		mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation)));
+		awaitValidationJob(mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation))));
 
 		// then
 		ProjectAcceptanceCriteriaDTO projectPAC = toProjectAcceptanceCriteriaDTO(getResponseBody(mockMvc.perform(get(viewCriteriaItems(withPipeInsteadOfSlash(projectBranch))).contentType(MediaType.APPLICATION_JSON))));
@@ -561,7 +568,7 @@ class ServiceIntegrationControllerTest extends AbstractTest {
 		// when
 		String receiveValidation = receiveValidation();
 		ValidationInformation validationInformation = new ValidationInformation(projectBranch, "COMPLETE", "https://www.test.com");
-		mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation)));
+		awaitValidationJob(mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation))));
 
 		// then
 		ProjectAcceptanceCriteriaDTO projectPAC = toProjectAcceptanceCriteriaDTO(getResponseBody(mockMvc.perform(get(viewCriteriaItems(withPipeInsteadOfSlash(projectBranch))).contentType(MediaType.APPLICATION_JSON))));
@@ -584,7 +591,7 @@ class ServiceIntegrationControllerTest extends AbstractTest {
 		// when
 		String receiveValidation = receiveValidation();
 		ValidationInformation validationInformation = new ValidationInformation(taskBranch, "COMPLETE", "https://www.test.com");
-		mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation)));
+		awaitValidationJob(mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation))));
 
 		// then
 		ProjectAcceptanceCriteriaDTO projectPAC = toProjectAcceptanceCriteriaDTO(getResponseBody(mockMvc.perform(get(viewCriteriaItems(withPipeInsteadOfSlash(taskBranch))).contentType(MediaType.APPLICATION_JSON))));
@@ -607,7 +614,7 @@ class ServiceIntegrationControllerTest extends AbstractTest {
 		// when
 		String receiveValidation = receiveValidation();
 		ValidationInformation validationInformation = new ValidationInformation(taskBranch, "COMPLETE", "https://www.test.com");
-		mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation)));
+		awaitValidationJob(mockMvc.perform(post(receiveValidation).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation))));
 
 		// then
 		ProjectAcceptanceCriteriaDTO projectPAC = toProjectAcceptanceCriteriaDTO(getResponseBody(mockMvc.perform(get(viewCriteriaItems(withPipeInsteadOfSlash(taskBranch))).contentType(MediaType.APPLICATION_JSON))));
@@ -616,6 +623,78 @@ class ServiceIntegrationControllerTest extends AbstractTest {
 		assertFalse(result.isComplete());
 	}
 
+	@Test
+	void receiveValidation_ShouldReturnFailedJob_WhenBranchDoesNotExist() throws Exception {
+		// given
+		String projectBranch = "MAIN/projectA";
+		givenBranchDoesNotExist();
+		givenCriteriaItemExists(CriteriaItem.PROJECT_VALIDATION_CLEAN, true, 1, CriteriaItem.PROJECT_VALIDATION_CLEAN, AuthoringLevel.PROJECT, true);
+		givenProjectAcceptanceCriteriaExists(projectBranch, 1, Set.of(CriteriaItem.PROJECT_VALIDATION_CLEAN), Collections.emptySet());
+
+		// when
+		ValidationInformation validationInformation = new ValidationInformation(projectBranch, "COMPLETE", "https://www.test.com");
+		ResultActions resultActions = mockMvc.perform(post(receiveValidation()).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation)));
+
+		// then
+		assertResponseStatus(resultActions, 200);
+		ValidationJob job = awaitValidationJob(resultActions);
+		assertEquals(ValidationJob.Status.FAILED, job.getStatus());
+		assertEquals(projectBranch, job.getBranchPath());
+	}
+
+	@Test
+	void receiveValidation_ShouldRespondBeforeReportIsProcessed_WhenReportIsSlow() throws Exception {
+		// given
+		String projectBranch = "MAIN/projectA";
+		givenBranchDoesExist(projectBranch);
+		givenCriteriaItemExists(CriteriaItem.PROJECT_VALIDATION_CLEAN, true, 1, CriteriaItem.PROJECT_VALIDATION_CLEAN, AuthoringLevel.PROJECT, true);
+		givenProjectAcceptanceCriteriaExists(projectBranch, 1, Set.of(CriteriaItem.PROJECT_VALIDATION_CLEAN), Collections.emptySet());
+		CountDownLatch reportFetched = new CountDownLatch(1);
+		when(validationService.isReportClean(any(), anyLong(), any())).thenAnswer(invocation -> {
+			// Stands in for downloading and parsing the RVF report
+			reportFetched.await(10, TimeUnit.SECONDS);
+			return true;
+		});
+
+		// when
+		ValidationInformation validationInformation = new ValidationInformation(projectBranch, "COMPLETE", "https://www.test.com");
+		ResultActions resultActions;
+		try {
+			resultActions = mockMvc.perform(post(receiveValidation()).contentType(MediaType.APPLICATION_JSON).content(asJson(validationInformation)));
+
+			// then
+			assertResponseStatus(resultActions, 200);
+			String location = resultActions.andReturn().getResponse().getHeader("Location");
+			assertFalse(validationProcessingService.getJob(location.substring(location.lastIndexOf('/') + 1)).isFinished());
+		} finally {
+			reportFetched.countDown();
+		}
+		assertEquals(ValidationJob.Status.COMPLETED, awaitValidationJob(resultActions).getStatus());
+	}
+
+		@Test
+	void getValidationJob_ShouldReturnExpectedResponse_WhenJobDoesNotExist() throws Exception {
+		// when
+		ResultActions resultActions = mockMvc.perform(get(receiveValidation() + "/unknown"));
+
+		// then
+		assertResponseStatus(resultActions, 404);
+	}
+
+	private ValidationJob awaitValidationJob(ResultActions submission) throws Exception {
+		final String location = submission.andReturn().getResponse().getHeader("Location");
+		final String id = location.substring(location.lastIndexOf('/') + 1);
+		for (int attempt = 0; attempt < 50; attempt++) {
+			final ValidationJob job = validationProcessingService.getJob(id);
+			if (job.isFinished()) {
+				return job;
+			}
+			Thread.sleep(100);
+		}
+		fail("Validation job " + id + " did not finish.");
+		return null;
+	}
+
 	private String receiveCommitInformation() {
 		return "/integration/snowstorm/commit";
 	}
@@ -2,12 +2,14 @@ package org.snomed.aag.rest;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.snomed.aag.AbstractTest;
 import org.snomed.aag.TestConfig;
 import org.snomed.aag.data.domain.WhitelistItem;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -15,22 +17,30 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, classes = TestConfig.class)
 class WhitelistControllerTest extends AbstractTest {
+    @Autowired
+    private ObjectMapper objectMapper;
+
     private WhitelistController whitelistController;
     private MockMvc mockMvc;
 
     @BeforeEach
     public void setUp() {
-        this.whitelistController = new WhitelistController(whitelistService, securityService);
+        this.whitelistController = new WhitelistController(whitelistService, securityService, objectMapper);
         this.mockMvc = MockMvcBuilders
                 .standaloneSetup(whitelistController)
                 .setControllerAdvice(new RestControllerAdvice())
@@ -165,6 +175,45 @@ class WhitelistControllerTest extends AbstractTest {
         assertEquals(4, whitelistItems.size()); //Found everything
     }
 
+    @Test
+    void findForBranch_ShouldNotReturnWhitelistItemsOfAnotherCodeSystem_WhenIncludingDescendants() throws Exception {
+        // given
+        String branchPath = UUID.randomUUID().toString();
+        String requestUrl = findForBranch(branchPath);
+
+        givenWhitelistItemExists(branchPath);
+        givenWhitelistItemExists(branchPath + "/projectA/taskA");
+        givenWhitelistItemExists(branchPath + "/SNOMEDCT-XX");
+        givenWhitelistItemExists(branchPath + "/SNOMEDCT-XX/projectB");
+        givenBranchDoesExist(System.currentTimeMillis());
+
+        // when
+        ResultActions resultActions = mockMvc.perform(get(requestUrl));
+        List<WhitelistItem> whitelistItems = toWhitelistItems(getResponseBody(resultActions));
+
+        // then
+        assertEquals(2, whitelistItems.size());
+        assertTrue(whitelistItems.stream().noneMatch(item -> item.getBranch().contains("SNOMEDCT-XX")));
+    }
+
+    @Test
+    void findForBranch_ShouldReturnWhitelistItemOnce_WhenSameItemCreatedTwice() throws Exception {
+        // given
+        String branchPath = UUID.randomUUID().toString();
+        String requestUrl = findForBranch(branchPath);
+
+        givenWhitelistItemExists(branchPath);
+        givenWhitelistItemExists(branchPath);
+        givenBranchDoesExist(System.currentTimeMillis());
+
+        // when
+        ResultActions resultActions = mockMvc.perform(get(requestUrl));
+        List<WhitelistItem> whitelistItems = toWhitelistItems(getResponseBody(resultActions));
+
+        // then
+        assertEquals(1, whitelistItems.size());
+    }
+
     @Test
     void findForBranch_ShouldReturnTransientProperty() throws Exception {
         // given
@@ -182,6 +231,136 @@ class WhitelistControllerTest extends AbstractTest {
         assertTrue(responseBody.contains("\"creationDateLong\""));
     }
 
+    @Test
+    void findForBranch_ShouldReturnEachWhitelistItemOnce_WhenPagingWithSearchAfter() throws Exception {
+        // given
+        String branchPath = UUID.randomUUID().toString();
+        for (String componentId : List.of("100", "200", "300")) {
+            WhitelistItem whitelistItem = buildWhitelistItem(branchPath);
+            whitelistItem.setComponentId(componentId);
+            whitelistService.create(whitelistItem);
+        }
+        givenBranchDoesExist(System.currentTimeMillis());
+
+        // when
+        ResultActions firstPage = mockMvc.perform(get(findForBranch(branchPath) + "?size=2&searchAfter="));
+        String searchAfter = firstPage.andReturn().getResponse().getHeader("X-Search-After");
+        ResultActions secondPage = mockMvc.perform(get(findForBranch(branchPath) + "?size=2&searchAfter=" + searchAfter));
+
+        // then
+        List<WhitelistItem> whitelistItems = new ArrayList<>(toWhitelistItems(getResponseBody(firstPage)));
+        whitelistItems.addAll(toWhitelistItems(getResponseBody(secondPage)));
+        assertEquals(Set.of("100", "200", "300"), whitelistItems.stream().map(WhitelistItem::getComponentId).collect(Collectors.toSet()));
+        assertEquals(3, whitelistItems.size());
+        assertNull(secondPage.andReturn().getResponse().getHeader("X-Search-After"));
+    }
+
+    @Test
+    void findForBranch_ShouldReturnTotalCountOfAllPages() throws Exception {
+        // given
+        String branchPath = UUID.randomUUID().toString();
+        for (String componentId : List.of("100", "200", "300")) {
+            WhitelistItem whitelistItem = buildWhitelistItem(branchPath);
+            whitelistItem.setComponentId(componentId);
+            whitelistService.create(whitelistItem);
+        }
+        givenBranchDoesExist(System.currentTimeMillis());
+
+        // when
+        ResultActions resultActions = mockMvc.perform(get(findForBranch(branchPath) + "?size=2"));
+
+        // then
+        assertEquals(2, toWhitelistItems(getResponseBody(resultActions)).size());
+        assertEquals("3", resultActions.andReturn().getResponse().getHeader("X-Total-Count"));
+    }
+
+    @Test
+    void findChangesForBranch_ShouldReturnDeletionsAndCreations_WhenGivenSequenceOfPreviousRead() throws Exception {
+        // given
+        String branchPath = UUID.randomUUID().toString();
+        WhitelistItem deleted = buildWhitelistItem(branchPath);
+        deleted = whitelistService.create(deleted);
+        givenBranchDoesExist(System.currentTimeMillis());
+        ResultActions firstRead = mockMvc.perform(get("/whitelist-items/" + branchPath + "/changes"));
+        String sequence = firstRead.andReturn().getResponse().getHeader("X-Sequence");
+        Thread.sleep(10);
+
+        whitelistService.delete(deleted);
+        WhitelistItem created = buildWhitelistItem(branchPath);
+        created.setComponentId("200");
+        created = whitelistService.create(created);
+
+        // when
+        ResultActions secondRead = mockMvc.perform(get("/whitelist-items/" + branchPath + "/changes?since=" + sequence));
+        List<Map<String, Object>> changes = new ArrayList<>();
+        for (String line : getResponseBody(secondRead).lines().toList()) {
+            changes.add(OBJECT_MAPPER.readValue(line, new TypeReference<>() {
+            }));
+        }
+
+        // then
+        assertEquals(1, getResponseBody(firstRead).lines().count());
+        assertEquals(2, changes.size());
+        assertEquals("DELETE", changes.get(0).get("type"));
+        assertEquals(deleted.getId(), changes.get(0).get("id"));
+        assertEquals("UPSERT", changes.get(1).get("type"));
+        assertEquals(created.getId(), changes.get(1).get("id"));
+    }
+
+    @Test
+    void addWhitelistItems_ShouldReturnStatusPerItem_WhenGivenValidInvalidAndRepeatedItems() throws Exception {
+        // given
+        String branchPath = UUID.randomUUID().toString();
+        WhitelistItem valid = buildWhitelistItem(branchPath);
+        WhitelistItem invalid = buildWhitelistItem(branchPath);
+        invalid.setConceptId("not-a-concept-id");
+        String ndjson = asJson(valid) + "\n" + asJson(invalid) + "\n" + asJson(valid) + "\n";
+
+        // when
+        ResultActions resultActions = mockMvc.perform(post("/whitelist-items/bulk")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content(ndjson));
+        List<Map<String, Object>> results = OBJECT_MAPPER.readValue(getResponseBody(resultActions), new TypeReference<>() {
+        });
+
+        // then
+        assertResponseStatus(resultActions, 200);
+        assertEquals(List.of("CREATED", "INVALID", "ALREADY_PRESENT"), results.stream().map(result -> result.get("status")).toList());
+        assertEquals(results.get(0).get("id"), results.get(2).get("id"));
+    }
+
+    @Test
+    void bulkValidate_ShouldStreamWhitelistedItems_WhenGivenNewlineDelimitedJson() throws Exception {
+        // given
+        String branchPath = UUID.randomUUID().toString();
+        givenWhitelistItemExists(branchPath);
+        WhitelistItem whitelisted = buildWhitelistItem(branchPath);
+        WhitelistItem notWhitelisted = buildWhitelistItem(branchPath);
+        notWhitelisted.setComponentId("200");
+        String ndjson = asJson(notWhitelisted) + "\n" + asJson(whitelisted) + "\n";
+
+        // when
+        ResultActions resultActions = mockMvc.perform(post("/whitelist-items/bulk-validate")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content(ndjson));
+        List<String> lines = getResponseBody(resultActions).lines().toList();
+
+        // then
+        assertResponseStatus(resultActions, 200);
+        assertEquals(1, lines.size());
+        assertEquals("100", OBJECT_MAPPER.readValue(lines.get(0), WhitelistItem.class).getComponentId());
+    }
+
+    private WhitelistItem buildWhitelistItem(String branch) {
+        WhitelistItem whitelistItem = new WhitelistItem();
+        whitelistItem.setUserId("WhitelistControllerTest");
+        whitelistItem.setValidationRuleId("test-rule-id");
+        whitelistItem.setComponentId("100");
+        whitelistItem.setConceptId("101");
+        whitelistItem.setBranch(branch);
+        return whitelistItem;
+    }
+
     private void givenWhitelistItemExists(String branch) throws Exception {
         // given
         String requestUrl = addWhitelistItem();
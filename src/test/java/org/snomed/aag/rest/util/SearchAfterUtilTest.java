@@ -0,0 +1,38 @@
+package org.snomed.aag.rest.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SearchAfterUtilTest {
+    @Test
+    public void fromToken_ShouldReturnSortValues_WhenGivenToken() {
+        //given
+        String token = SearchAfterUtil.toToken(List.of(1616000000000L, "a1b2|c3"));
+
+        //when
+        List<Object> result = SearchAfterUtil.fromToken(token);
+
+        //then
+        assertEquals(List.of(1616000000000L, "a1b2|c3"), result);
+    }
+
+    @Test
+    public void fromToken_ShouldReturnNull_WhenGivenEmptyToken() {
+        //when
+        List<Object> result = SearchAfterUtil.fromToken("");
+
+        //then
+        assertNull(result);
+    }
+
+    @Test
+    public void fromToken_ShouldThrowException_WhenGivenInvalidToken() {
+        //then
+        assertThrows(IllegalArgumentException.class, () -> SearchAfterUtil.fromToken("not-a-token"));
+    }
+}